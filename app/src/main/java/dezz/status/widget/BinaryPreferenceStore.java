@@ -0,0 +1,492 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link SharedPreferences} kept in a compact binary file instead of XML, so a cold start (e.g.
+ * from the locked boot) doesn't have to parse XML before the first frame. The file is memory
+ * mapped and read once, after that all reads come from memory. Every write replaces the whole
+ * file through a temporary file and a rename, so a crash leaves either the old or the new file.
+ * Writes from {@link Editor#apply()} are pending until {@link #awaitWrites()} returns.
+ * <p>
+ * The first time a store is opened, the values are taken over from the XML preferences of the
+ * same name. The XML file is kept, so an older version of the app still finds its settings.
+ */
+final class BinaryPreferenceStore implements SharedPreferences {
+    private static final String TAG = "BinaryPreferenceStore";
+
+    private static final int MAGIC = 0x44535746;
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_STRING_SET = 'T';
+
+    // One store per file, like the system does for XML preferences
+    private static final Map<String, BinaryPreferenceStore> instances = new HashMap<>();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final long AWAIT_WRITES_TIMEOUT = 5000;
+
+    // Marks a removed key in an editor
+    private static final Object REMOVED = new Object();
+    // Keeps the temporary files of concurrent writes apart and the newest values last on disk
+    private static final Object WRITE_LOCK = new Object();
+
+    private final File file;
+    private final Map<String, Object> values;
+    private final List<OnSharedPreferenceChangeListener> listeners = new ArrayList<>();
+    private boolean writeScheduled = false;
+
+    private BinaryPreferenceStore(File file, Map<String, Object> values) {
+        this.file = file;
+        this.values = values;
+    }
+
+    static BinaryPreferenceStore get(Context context, String name) {
+        synchronized (instances) {
+            BinaryPreferenceStore store = instances.get(name);
+            if (store == null) {
+                store = open(context.getApplicationContext().createDeviceProtectedStorageContext(), name);
+                instances.put(name, store);
+            }
+            return store;
+        }
+    }
+
+    static File getFile(Context deviceContext, String name) {
+        return new File(deviceContext.getFilesDir(), name + ".bin");
+    }
+
+    private static BinaryPreferenceStore open(Context deviceContext, String name) {
+        File file = getFile(deviceContext, name);
+        if (file.exists()) {
+            try {
+                return new BinaryPreferenceStore(file, read(file));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read " + file + ", taking the values from XML again", e);
+            }
+        }
+
+        Map<String, Object> values = new HashMap<>(deviceContext.getSharedPreferences(name, Context.MODE_PRIVATE).getAll());
+        BinaryPreferenceStore store = new BinaryPreferenceStore(file, values);
+        try {
+            write(file, values);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + file, e);
+        }
+        return store;
+    }
+
+    static Map<String, Object> read(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file); FileChannel channel = input.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return parse(buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt preferences file", e);
+            }
+        }
+    }
+
+    private static Map<String, Object> parse(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            throw new IOException("Unknown preferences file format");
+        }
+        int count = buffer.getInt();
+        Map<String, Object> values = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            String key = readString(buffer);
+            byte type = buffer.get();
+            Object value = switch (type) {
+                case TYPE_BOOLEAN -> buffer.get() != 0;
+                case TYPE_INT -> buffer.getInt();
+                case TYPE_LONG -> buffer.getLong();
+                case TYPE_FLOAT -> buffer.getFloat();
+                case TYPE_STRING -> readString(buffer);
+                case TYPE_STRING_SET -> {
+                    int size = buffer.getInt();
+                    Set<String> set = new HashSet<>();
+                    for (int j = 0; j < size; j++) {
+                        set.add(readString(buffer));
+                    }
+                    yield set;
+                }
+                default -> throw new IOException("Unknown value type " + type);
+            };
+            values.put(key, value);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Writes to a temporary file first and renames it over the old one, which is atomic
+    static void write(File file, Map<String, ?> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeInt(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            writeString(output, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Boolean booleanValue) {
+                output.writeByte(TYPE_BOOLEAN);
+                output.writeBoolean(booleanValue);
+            } else if (value instanceof Integer intValue) {
+                output.writeByte(TYPE_INT);
+                output.writeInt(intValue);
+            } else if (value instanceof Long longValue) {
+                output.writeByte(TYPE_LONG);
+                output.writeLong(longValue);
+            } else if (value instanceof Float floatValue) {
+                output.writeByte(TYPE_FLOAT);
+                output.writeFloat(floatValue);
+            } else if (value instanceof String stringValue) {
+                output.writeByte(TYPE_STRING);
+                writeString(output, stringValue);
+            } else if (value instanceof Set<?> set) {
+                output.writeByte(TYPE_STRING_SET);
+                output.writeInt(set.size());
+                for (Object item : set) {
+                    writeString(output, (String) item);
+                }
+            } else {
+                throw new IOException("Unsupported value type for " + entry.getKey());
+            }
+        }
+        output.flush();
+
+        synchronized (WRITE_LOCK) {
+            File tempFile = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fileOutput = new FileOutputStream(tempFile)) {
+                bytes.writeTo(fileOutput);
+                fileOutput.getFD().sync();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile + " to " + file);
+            }
+            // The rename itself is only durable once the directory is on disk
+            syncDirectory(file.getParentFile());
+        }
+    }
+
+    private static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to sync " + directory, e);
+        }
+    }
+
+    /**
+     * Blocks until everything applied so far is written, like the system does for XML preferences
+     * when a service stops, so the process can be killed afterwards without losing changes.
+     */
+    static void awaitWrites() {
+        try {
+            // The writer is a single thread, so the empty task runs after all pending writes
+            writer.submit(() -> {
+            }).get(AWAIT_WRITES_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.w(TAG, "Pending writes did not finish", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (this) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = getValue(key);
+        return value instanceof String stringValue ? stringValue : defValue;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = getValue(key);
+        return value instanceof Set<?> set ? new HashSet<>((Set<String>) set) : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = getValue(key);
+        return value instanceof Integer intValue ? intValue : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = getValue(key);
+        return value instanceof Long longValue ? longValue : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = getValue(key);
+        return value instanceof Float floatValue ? floatValue : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = getValue(key);
+        return value instanceof Boolean booleanValue ? booleanValue : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        synchronized (this) {
+            return values.containsKey(key);
+        }
+    }
+
+    @Override
+    public SharedPreferences.Editor edit() {
+        return new Editor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            if (!listeners.contains(listener)) {
+                listeners.add(listener);
+            }
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    @Nullable
+    private Object getValue(String key) {
+        synchronized (this) {
+            return values.get(key);
+        }
+    }
+
+    // Merges the editor into the values and returns the keys that have changed
+    private List<String> merge(Map<String, Object> changes, boolean clear) {
+        List<String> changedKeys = new ArrayList<>();
+        synchronized (this) {
+            if (clear && !values.isEmpty()) {
+                changedKeys.addAll(values.keySet());
+                values.clear();
+            }
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                String key = change.getKey();
+                Object value = change.getValue();
+                boolean changed = value == REMOVED ? values.remove(key) != null : !value.equals(values.put(key, value));
+                if (changed && !changedKeys.contains(key)) {
+                    changedKeys.add(key);
+                }
+            }
+        }
+        return changedKeys;
+    }
+
+    // The values are taken under the write lock, so an older snapshot can't be written after a newer one
+    private void writeLatest() throws IOException {
+        synchronized (WRITE_LOCK) {
+            Map<String, Object> snapshot;
+            synchronized (this) {
+                writeScheduled = false;
+                snapshot = new HashMap<>(values);
+            }
+            write(file, snapshot);
+        }
+    }
+
+    // Writes from apply() are merged: the writer always takes the latest values
+    private void scheduleWrite() {
+        synchronized (this) {
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        writer.execute(() -> {
+            try {
+                writeLatest();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write " + file, e);
+            }
+        });
+    }
+
+    private void notifyListeners(List<String> changedKeys) {
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(() -> notifyListeners(changedKeys));
+            return;
+        }
+        List<OnSharedPreferenceChangeListener> currentListeners;
+        synchronized (listeners) {
+            if (listeners.isEmpty()) {
+                return;
+            }
+            currentListeners = new ArrayList<>(listeners);
+        }
+        for (String key : changedKeys) {
+            for (OnSharedPreferenceChangeListener listener : currentListeners) {
+                listener.onSharedPreferenceChanged(this, key);
+            }
+        }
+    }
+
+    private final class Editor implements SharedPreferences.Editor {
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean clear = false;
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            changes.put(key, value != null ? value : REMOVED);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            changes.put(key, values != null ? new HashSet<>(values) : REMOVED);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            changes.put(key, REMOVED);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> changedKeys = merge(changes, clear);
+            notifyListeners(changedKeys);
+            if (changedKeys.isEmpty()) {
+                return true;
+            }
+            try {
+                writeLatest();
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write " + file, e);
+                return false;
+            }
+        }
+
+        @Override
+        public void apply() {
+            List<String> changedKeys = merge(changes, clear);
+            notifyListeners(changedKeys);
+            if (!changedKeys.isEmpty()) {
+                scheduleWrite();
+            }
+        }
+    }
+}
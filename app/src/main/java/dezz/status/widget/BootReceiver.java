@@ -33,6 +33,7 @@ public class BootReceiver extends BroadcastReceiver {
                 || Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(intent.getAction())
                 || ACTION_QUICKBOOT_POWERON.equals(intent.getAction())) {
             Log.d(TAG, "Device boot completed, checking if widget service should auto-start");
+            StartupTrace.onBootReceived();
 
             final Preferences prefs = new Preferences(context);
             if (!prefs.widgetEnabled.get()) {
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+/**
+ * Builds the date and time patterns of an overlay from its preferences.
+ */
+public final class ClockFormat {
+    private ClockFormat() {
+    }
+
+    public static String getTimePattern(Preferences prefs) {
+        return prefs.showSeconds.get() ? "HH:mm:ss" : "HH:mm";
+    }
+
+    public static String getDatePattern(Preferences prefs) {
+        boolean showDate = prefs.showDate.get();
+        boolean showDayOfTheWeek = prefs.showDayOfTheWeek.get();
+        if (!showDate && !showDayOfTheWeek) {
+            return "";
+        }
+
+        boolean showFullDayAndMonth = prefs.showFullDayAndMonth.get();
+
+        String divider = (showDate && showDayOfTheWeek) ? (prefs.oneLineLayout.get() ? "," : " \n") : "";
+        String dayOfTheWeekFormatStr = showFullDayAndMonth ? "EEEE" : "EEE";
+        String dateFormatStr = showFullDayAndMonth ? "d MMMM" : "d MMM";
+
+        // We add spaces at the start/end to avoid outline cropping by canvas which is not ready for the outline
+        return (showDayOfTheWeek ? " " + dayOfTheWeekFormatStr + divider : "") + (showDate ? " " + dateFormatStr : "") + " ";
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Ticks on wall-clock second or minute boundaries. Every tick is posted for an absolute uptime
+ * computed from the current time rather than relative to the previous run, so delays never add
+ * up. The listener is called at the start of the next frame, so the new text is drawn in that
+ * same frame.
+ */
+final class ClockTicker {
+    interface Listener {
+        void onTick();
+    }
+
+    private static final long SECOND_PERIOD = 1000;
+    private static final long MINUTE_PERIOD = 60 * 1000;
+
+    private final Handler handler;
+    private final Listener listener;
+
+    private long period = 0;
+    private long boundaryTime = 0;
+    // The boundary the scheduled frame serves, boundaryTime is already the next one by then
+    private long pendingBoundaryTime = 0;
+    private boolean frameScheduled = false;
+
+    private final Runnable boundaryRunnable = this::onBoundary;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled = false;
+        RenderStats.onClockTick(System.currentTimeMillis() - pendingBoundaryTime);
+        listener.onTick();
+    };
+
+    ClockTicker(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts ticking every second or every minute. Calling it again with the same mode does nothing.
+     */
+    void start(boolean everySecond) {
+        long newPeriod = everySecond ? SECOND_PERIOD : MINUTE_PERIOD;
+        if (period == newPeriod) {
+            return;
+        }
+        stop();
+        period = newPeriod;
+        listener.onTick();
+        scheduleNextBoundary();
+    }
+
+    /**
+     * Ticks right away and realigns to the boundaries, e.g. after the system time was changed.
+     */
+    void restart() {
+        if (period == 0) {
+            return;
+        }
+        handler.removeCallbacks(boundaryRunnable);
+        listener.onTick();
+        scheduleNextBoundary();
+    }
+
+    void stop() {
+        if (period == 0) {
+            return;
+        }
+        period = 0;
+        handler.removeCallbacks(boundaryRunnable);
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            frameScheduled = false;
+        }
+    }
+
+    private void onBoundary() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            pendingBoundaryTime = boundaryTime;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+        scheduleNextBoundary();
+    }
+
+    private void scheduleNextBoundary() {
+        long now = System.currentTimeMillis();
+        boundaryTime = now - now % period + period;
+        handler.postAtTime(boundaryRunnable, SystemClock.uptimeMillis() + boundaryTime - now);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.TextPaint;
+
+import androidx.annotation.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Pre-rendered outlined glyphs of a small character set (the clock digits, the characters of the
+ * date line) in a single bitmap. A text is drawn as a row of bitmap blits, skipping text shaping
+ * and path stroking on every frame. Kerning is not applied, which does not matter for the digits
+ * and is barely visible for the short date line.
+ */
+final class GlyphAtlas {
+    static final String TIME_CHARACTERS = "0123456789:";
+
+    // The date line is only drawn from the atlas when its character set is small enough
+    private static final int MAX_CHARACTERS = 96;
+    private static final int MAX_BITMAP_WIDTH = 2048;
+
+    private final String characters;
+    private final float[] advances;
+    private final int[] cellLefts;
+    private final int[] cellTops;
+    private final int cellHeight;
+    private final int glyphTop;
+    private final int glyphPadding;
+    private final Bitmap bitmap;
+    private final Paint bitmapPaint = new Paint();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+
+    private GlyphAtlas(String characters, TextPaint paint, float outlineWidth, int textColor, int outlineColor) {
+        this.characters = characters;
+        int count = characters.length();
+        advances = new float[count];
+        cellLefts = new int[count];
+        cellTops = new int[count];
+
+        Paint.FontMetricsInt metrics = paint.getFontMetricsInt();
+        // One extra pixel for glyphs that slightly overhang their advance
+        glyphPadding = (int) Math.ceil(outlineWidth) + 1;
+        glyphTop = metrics.top;
+        cellHeight = metrics.bottom - metrics.top + 2 * glyphPadding;
+
+        int x = 0;
+        int y = 0;
+        int bitmapWidth = 1;
+        for (int i = 0; i < count; i++) {
+            advances[i] = paint.measureText(characters, i, i + 1);
+            int cellWidth = getCellWidth(i);
+            if (x > 0 && x + cellWidth > MAX_BITMAP_WIDTH) {
+                x = 0;
+                y += cellHeight;
+            }
+            cellLefts[i] = x;
+            cellTops[i] = y;
+            x += cellWidth;
+            bitmapWidth = Math.max(bitmapWidth, x);
+        }
+
+        bitmap = Bitmap.createBitmap(bitmapWidth, y + cellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        TextPaint glyphPaint = new TextPaint(paint);
+        for (int i = 0; i < count; i++) {
+            float glyphX = cellLefts[i] + glyphPadding;
+            float baseline = cellTops[i] + glyphPadding - glyphTop;
+            if (outlineWidth > 0) {
+                glyphPaint.setStyle(Paint.Style.STROKE);
+                glyphPaint.setStrokeWidth(outlineWidth);
+                glyphPaint.setColor(outlineColor);
+                canvas.drawText(characters, i, i + 1, glyphX, baseline, glyphPaint);
+            }
+            glyphPaint.setStyle(Paint.Style.FILL);
+            glyphPaint.setColor(textColor);
+            canvas.drawText(characters, i, i + 1, glyphX, baseline, glyphPaint);
+        }
+    }
+
+    /**
+     * Renders the atlas, or returns null when the character set cannot be drawn glyph by glyph.
+     */
+    @Nullable
+    static GlyphAtlas build(String characters, TextPaint paint, float outlineWidth, int textColor, int outlineColor) {
+        if (characters.isEmpty() || characters.length() > MAX_CHARACTERS) {
+            return null;
+        }
+        for (int i = 0; i < characters.length(); i++) {
+            if (!isSimpleCharacter(characters.charAt(i))) {
+                return null;
+            }
+        }
+        return new GlyphAtlas(characters, paint, outlineWidth, textColor, outlineColor);
+    }
+
+    /**
+     * Collects the characters the date pattern produces over a whole year.
+     */
+    static String collectDateCharacters(String pattern, Locale locale) {
+        if (pattern.isEmpty()) {
+            return "";
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+        Calendar calendar = Calendar.getInstance(locale);
+        calendar.clear();
+        calendar.set(2025, Calendar.JANUARY, 1);
+
+        StringBuilder characters = new StringBuilder();
+        for (int day = 0; day < 365; day++) {
+            String text = format.format(calendar.getTime());
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c != '\n' && characters.indexOf(String.valueOf(c)) < 0) {
+                    characters.append(c);
+                }
+            }
+            calendar.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return characters.toString();
+    }
+
+    boolean canDraw(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && characters.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    float measure(CharSequence text, int start, int end) {
+        float width = 0F;
+        for (int i = start; i < end; i++) {
+            width += advances[characters.indexOf(text.charAt(i))];
+        }
+        return width;
+    }
+
+    void drawLine(Canvas canvas, CharSequence text, int start, int end, float x, int baseline) {
+        for (int i = start; i < end; i++) {
+            int index = characters.indexOf(text.charAt(i));
+            int left = Math.round(x) - glyphPadding;
+            int top = baseline + glyphTop - glyphPadding;
+            src.set(cellLefts[index], cellTops[index], cellLefts[index] + getCellWidth(index), cellTops[index] + cellHeight);
+            dst.set(left, top, left + src.width(), top + cellHeight);
+            canvas.drawBitmap(bitmap, src, dst, bitmapPaint);
+            x += advances[index];
+        }
+    }
+
+    void recycle() {
+        bitmap.recycle();
+    }
+
+    private int getCellWidth(int index) {
+        return (int) Math.ceil(advances[index]) + 2 * glyphPadding;
+    }
+
+    // Combining marks, surrogates and right-to-left letters need the text layout engine
+    private static boolean isSimpleCharacter(char c) {
+        if (Character.isSurrogate(c)) {
+            return false;
+        }
+        int type = Character.getType(c);
+        if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK) {
+            return false;
+        }
+        byte direction = Character.getDirectionality(c);
+        return direction != Character.DIRECTIONALITY_RIGHT_TO_LEFT && direction != Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.SystemClock;
+
+/**
+ * Decides whether location updates make a good or a bad fix without flickering. The accuracy is
+ * smoothed with an exponentially weighted moving average, a fix becomes good below the enter
+ * threshold and bad again only above the exit threshold, and a state has to last for a minimum
+ * time before it can change. Flips are counted both for this filter and for the single sample
+ * rule used before it, so the diagnostics can show the difference.
+ */
+final class GnssFixFilter {
+    // The rule used before the filter: a single sample better than this was a good fix
+    private static final float RAW_GOOD_ACCURACY = 20F;
+    // An update without an accuracy counts as a poor fix
+    private static final float MISSING_ACCURACY = 100F;
+    private static final float MILLIS_PER_HOUR = 60 * 60 * 1000F;
+
+    private static int rawFlips = 0;
+    private static int filteredFlips = 0;
+    private static long statsStartTime = 0;
+
+    private float smoothing = 0.3F;
+    private float enterAccuracy = 15F;
+    private float exitAccuracy = 25F;
+    private long minDwellMillis = 5000;
+
+    private boolean hasState = false;
+    private float smoothedAccuracy = 0F;
+    private boolean good = false;
+    private boolean rawGood = false;
+    private long stateSince = 0;
+
+    void configure(Preferences prefs) {
+        smoothing = prefs.gnssSmoothingPercent.get() / 100F;
+        enterAccuracy = prefs.gnssGoodEnterAccuracy.get();
+        exitAccuracy = Math.max(enterAccuracy, prefs.gnssGoodExitAccuracy.get());
+        minDwellMillis = prefs.gnssMinDwellSeconds.get() * 1000L;
+    }
+
+    /**
+     * Forgets the smoothed accuracy, e.g. when GNSS is stopped, so the next fix starts over.
+     */
+    void reset() {
+        hasState = false;
+    }
+
+    /**
+     * Feeds a location update and returns whether the fix is good now.
+     */
+    boolean update(boolean hasAccuracy, float accuracy, long elapsedRealtime) {
+        float sample = hasAccuracy ? accuracy : MISSING_ACCURACY;
+        boolean newRawGood = hasAccuracy && accuracy < RAW_GOOD_ACCURACY;
+
+        if (!hasState) {
+            hasState = true;
+            smoothedAccuracy = sample;
+            good = sample < enterAccuracy;
+            rawGood = newRawGood;
+            stateSince = elapsedRealtime;
+            return good;
+        }
+
+        if (newRawGood != rawGood) {
+            rawGood = newRawGood;
+            rawFlips++;
+        }
+
+        smoothedAccuracy += smoothing * (sample - smoothedAccuracy);
+        boolean newGood = good ? smoothedAccuracy <= exitAccuracy : smoothedAccuracy < enterAccuracy;
+        if (newGood != good && elapsedRealtime - stateSince >= minDwellMillis) {
+            good = newGood;
+            stateSince = elapsedRealtime;
+            filteredFlips++;
+        }
+        return good;
+    }
+
+    static void resetStats() {
+        rawFlips = 0;
+        filteredFlips = 0;
+        statsStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Returns how often per hour a single sample rule would have switched the GNSS icon.
+     */
+    static float getRawFlipsPerHour() {
+        return getPerHour(rawFlips);
+    }
+
+    static float getFilteredFlipsPerHour() {
+        return getPerHour(filteredFlips);
+    }
+
+    private static float getPerHour(int count) {
+        long elapsed = SystemClock.elapsedRealtime() - statsStartTime;
+        if (statsStartTime == 0 || elapsed <= 0) {
+            return 0F;
+        }
+        return count * MILLIS_PER_HOUR / elapsed;
+    }
+}
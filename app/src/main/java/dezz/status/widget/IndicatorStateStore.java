@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.Handler;
+
+import dezz.status.widget.WidgetService.GnssState;
+import dezz.status.widget.WidgetService.WiFiState;
+
+/**
+ * Keeps the last known indicator states across service restarts, so the first frame doesn't show
+ * everything as "off". Changes are written at most once per {@link #FLUSH_DELAY}.
+ */
+public final class IndicatorStateStore {
+    private static final long FLUSH_DELAY = 60_000;
+
+    // A good fix is only trusted for a short while, afterwards we show that we are still searching
+    private static final long GNSS_GOOD_MAX_AGE = 30_000;
+    private static final long GNSS_BAD_MAX_AGE = 5 * 60_000;
+    private static final long WIFI_INTERNET_MAX_AGE = 2 * 60_000;
+    private static final long WIFI_CONNECTED_MAX_AGE = 10 * 60_000;
+
+    private final Preferences prefs;
+    private final Handler handler;
+    private final Runnable flushRunnable = this::flushChanges;
+
+    private GnssState gnssState = GnssState.OFF;
+    private WiFiState wifiState = WiFiState.OFF;
+    private boolean dirty = false;
+
+    public IndicatorStateStore(Preferences prefs, Handler handler) {
+        this.prefs = prefs;
+        this.handler = handler;
+    }
+
+    public GnssState restoreGnssState() {
+        long age = getAge(prefs.lastGnssStateTime.get());
+        GnssState saved = GnssState.values()[clampOrdinal(prefs.lastGnssState.get(), GnssState.values().length)];
+
+        if (saved == GnssState.GOOD && age <= GNSS_GOOD_MAX_AGE) {
+            gnssState = GnssState.GOOD;
+        } else if (saved != GnssState.OFF && age <= GNSS_BAD_MAX_AGE) {
+            gnssState = GnssState.BAD;
+        } else {
+            gnssState = GnssState.OFF;
+        }
+        return gnssState;
+    }
+
+    public WiFiState restoreWifiState() {
+        long age = getAge(prefs.lastWifiStateTime.get());
+        WiFiState saved = WiFiState.values()[clampOrdinal(prefs.lastWifiState.get(), WiFiState.values().length)];
+
+        if (saved == WiFiState.INTERNET && age <= WIFI_INTERNET_MAX_AGE) {
+            wifiState = WiFiState.INTERNET;
+        } else if (saved != WiFiState.OFF && age <= WIFI_CONNECTED_MAX_AGE) {
+            wifiState = WiFiState.NO_INTERNET;
+        } else {
+            wifiState = WiFiState.OFF;
+        }
+        return wifiState;
+    }
+
+    public void setGnssState(GnssState state) {
+        if (gnssState != state) {
+            gnssState = state;
+            markDirty();
+        }
+    }
+
+    public void setWifiState(WiFiState state) {
+        if (wifiState != state) {
+            wifiState = state;
+            markDirty();
+        }
+    }
+
+    /**
+     * Writes the states together with the current time, even if they didn't change, so that they
+     * are still trusted on the next start.
+     */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        dirty = false;
+
+        // The states are still current at this point, so the flush time is when they were last known to hold
+        long now = System.currentTimeMillis();
+        prefs.batch(() -> {
+            prefs.lastGnssState.set(gnssState.ordinal());
+            prefs.lastGnssStateTime.set(now);
+            prefs.lastWifiState.set(wifiState.ordinal());
+            prefs.lastWifiStateTime.set(now);
+        });
+    }
+
+    private void flushChanges() {
+        if (dirty) {
+            flush();
+        }
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            handler.postDelayed(flushRunnable, FLUSH_DELAY);
+        }
+    }
+
+    private static long getAge(long savedTime) {
+        long age = System.currentTimeMillis() - savedTime;
+        // The wall clock could have been moved back since the state was saved, don't trust it then
+        return age < 0 ? Long.MAX_VALUE : age;
+    }
+
+    private static int clampOrdinal(int ordinal, int count) {
+        return ordinal < 0 || ordinal >= count ? 0 : ordinal;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import java.util.Locale;
+
+import dezz.status.widget.databinding.OverlayStatusWidgetBinding;
+
+public class LayoutStatusView implements StatusView {
+    private final Context context;
+    private final OverlayStatusWidgetBinding binding;
+
+    private int backgroundAlpha = 0;
+    private GradientDrawable background = null;
+    private int bgColor = -1;
+    private int bgCornerRadius = -1;
+    private String datePattern = "";
+    private boolean countStats = false;
+    private final TextWidthCache.Callback dateWidthCallback = this::updateDateWidth;
+
+    // Icon hit regions in root coordinates, updated on layout so a tap doesn't have to compute them
+    private final Rect wifiBounds = new Rect();
+    private final Rect gnssBounds = new Rect();
+
+    public LayoutStatusView(Context context) {
+        this.context = context;
+
+        binding = OverlayStatusWidgetBinding.inflate(LayoutInflater.from(context));
+        binding.getRoot().setVisibility(View.VISIBLE);
+        binding.getRoot().addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+            int backgroundCornerRadius = Math.min(binding.getRoot().getWidth(), binding.getRoot().getHeight()) / 2;
+            int backgroundColor = ContextCompat.getColor(context, R.color.widget_background) & 0x00FFFFFF | (backgroundAlpha << 24);
+            binding.overlayContainer.setBackground(getBackground(backgroundColor, backgroundCornerRadius));
+        });
+        binding.getRoot().setLayoutCallback(() -> {
+            updateBounds(binding.wifiStatusIcon, wifiBounds);
+            updateBounds(binding.gnssStatusIcon, gnssBounds);
+        });
+    }
+
+    @Override
+    public View getRoot() {
+        return binding.getRoot();
+    }
+
+    @Override
+    public void setWindowVisibilityListener(@Nullable OverlayLayout.WindowVisibilityListener listener) {
+        binding.getRoot().setWindowVisibilityListener(listener);
+    }
+
+    @Override
+    public void setFirstDrawCallback(@Nullable Runnable callback) {
+        binding.getRoot().setFirstDrawCallback(callback);
+    }
+
+    @Override
+    public void setCountStats(boolean countStats) {
+        this.countStats = countStats;
+        binding.getRoot().setCountStats(countStats);
+        binding.timeText.setCountStats(countStats);
+        binding.dateText.setCountStats(countStats);
+        binding.externalText.setCountStats(countStats);
+    }
+
+    @Override
+    public void applyPreferences(Preferences prefs) {
+        backgroundAlpha = prefs.backgroundAlpha.get();
+
+        int iconSize = prefs.iconSize.get();
+        int timeFontSize = prefs.timeFontSize.get();
+        int dateFontSize = prefs.dateFontSize.get();
+        int padding = Math.max(iconSize, Math.max(timeFontSize, dateFontSize)) / 2;
+
+        binding.getRoot().setPadding(padding, 0, padding, 0);
+
+        ViewGroup.LayoutParams iconParams = binding.wifiStatusIcon.getLayoutParams();
+        iconParams.width = iconSize;
+        iconParams.height = iconSize;
+        binding.wifiStatusIcon.setLayoutParams(iconParams);
+
+        iconParams = binding.gnssStatusIcon.getLayoutParams();
+        iconParams.width = iconSize;
+        iconParams.height = iconSize;
+        binding.gnssStatusIcon.setLayoutParams(iconParams);
+
+        float timeOutlineWidth = Math.max(2F, prefs.timeFontSize.get() / 32F);
+        float dateOutlineWidth = Math.max(2F, prefs.dateFontSize.get() / 32F);
+        int outlineColor = ContextCompat.getColor(context, R.color.text_outline) & 0x00FFFFFF | (prefs.textOutlineAlpha.get() << 24);
+        binding.timeText.setOutlineColor(outlineColor);
+        binding.timeText.setOutlineWidth(timeOutlineWidth);
+        binding.dateText.setOutlineColor(outlineColor);
+        binding.dateText.setOutlineWidth(dateOutlineWidth);
+        binding.externalText.setOutlineColor(outlineColor);
+        binding.externalText.setOutlineWidth(dateOutlineWidth);
+
+        binding.timeText.setTextSize(TypedValue.COMPLEX_UNIT_PX, prefs.timeFontSize.get());
+        binding.dateText.setTextSize(TypedValue.COMPLEX_UNIT_PX, prefs.dateFontSize.get());
+        binding.externalText.setTextSize(TypedValue.COMPLEX_UNIT_PX, prefs.dateFontSize.get());
+
+        // Fixed-width slots keep the TextViews from requesting a layout on every clock tick
+        setWidth(binding.timeText, TextSlots.measureTimeWidth(binding.timeText.getPaint(), ClockFormat.getTimePattern(prefs)));
+        datePattern = ClockFormat.getDatePattern(prefs);
+        updateDateWidth();
+
+        binding.timeText.setVisibility(prefs.showTime.get() ? View.VISIBLE : View.GONE);
+        binding.dateText.setVisibility(prefs.showDate.get() || prefs.showDayOfTheWeek.get() ? View.VISIBLE : View.GONE);
+
+        // Calendar alignment
+        switch (prefs.calendarAlignment.get()) {
+            case 1 -> binding.dateText.setGravity(Gravity.CENTER_HORIZONTAL);
+            case 2 -> binding.dateText.setGravity(Gravity.END);
+            default -> binding.dateText.setGravity(Gravity.START);
+        }
+
+        // Icons (GPS and WiFi)
+        binding.wifiStatusIcon.setVisibility(prefs.showWifiIcon.get() ? View.VISIBLE : View.GONE);
+        binding.gnssStatusIcon.setVisibility(prefs.showGnssIcon.get() ? View.VISIBLE : View.GONE);
+
+        LinearLayout.LayoutParams dateTimeLayoutParams = (LinearLayout.LayoutParams) binding.dateTimeContainer.getLayoutParams();
+        dateTimeLayoutParams.setMargins(0, 0, prefs.spacingBetweenTextsAndIcons.get(), 0);
+        binding.dateTimeContainer.setLayoutParams(dateTimeLayoutParams);
+
+        binding.timeText.setTranslationY(prefs.adjustTimeY.get());
+        binding.dateText.setTranslationY(prefs.adjustDateY.get());
+    }
+
+    @Override
+    public void setTimeText(String text) {
+        if (!text.contentEquals(binding.timeText.getText())) {
+            if (countStats) {
+                PerfBudget.count(PerfBudget.TEXT_UPDATES);
+            }
+            binding.timeText.setText(text);
+        }
+    }
+
+    @Override
+    public void setDateText(String text) {
+        if (!text.contentEquals(binding.dateText.getText())) {
+            if (countStats) {
+                PerfBudget.count(PerfBudget.TEXT_UPDATES);
+            }
+            binding.dateText.setText(text);
+        }
+    }
+
+    @Override
+    public void setExternalText(String text) {
+        // Spaces keep the outline from being cropped, like in the date
+        String paddedText = text.isEmpty() ? "" : " " + text + " ";
+        if (!paddedText.contentEquals(binding.externalText.getText())) {
+            if (countStats) {
+                PerfBudget.count(PerfBudget.TEXT_UPDATES);
+            }
+            binding.externalText.setText(paddedText);
+            binding.externalText.setVisibility(text.isEmpty() ? View.GONE : View.VISIBLE);
+        }
+    }
+
+    @Override
+    public void setWifiIcon(int resource) {
+        if (countStats) {
+            PerfBudget.count(PerfBudget.ICON_UPDATES);
+        }
+        binding.wifiStatusIcon.setImageResource(resource);
+    }
+
+    @Override
+    public void setGnssIcon(int resource) {
+        if (countStats) {
+            PerfBudget.count(PerfBudget.ICON_UPDATES);
+        }
+        binding.gnssStatusIcon.setImageResource(resource);
+    }
+
+    @Override
+    public int findIconAt(int x, int y) {
+        if (wifiBounds.contains(x, y)) {
+            return ICON_WIFI;
+        }
+        if (gnssBounds.contains(x, y)) {
+            return ICON_GNSS;
+        }
+        return ICON_NONE;
+    }
+
+    private Drawable getBackground(int color, int cornerRadius) {
+        if (this.background == null || color != this.bgColor || cornerRadius != this.bgCornerRadius) {
+            this.background = new GradientDrawable();
+            this.background.setColor(color);
+            this.background.setCornerRadius(cornerRadius);
+            this.bgColor = color;
+            this.bgCornerRadius = cornerRadius;
+        }
+
+        return this.background;
+    }
+
+    private void updateDateWidth() {
+        setWidth(binding.dateText, TextWidthCache.getDateWidth(binding.dateText.getPaint(), datePattern, Locale.getDefault(), dateWidthCallback));
+    }
+
+    private static void setWidth(View view, int width) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        params.width = width > 0 ? width : ViewGroup.LayoutParams.WRAP_CONTENT;
+        view.setLayoutParams(params);
+    }
+
+    private void updateBounds(View view, Rect bounds) {
+        if (view.getVisibility() != View.VISIBLE) {
+            bounds.setEmpty();
+            return;
+        }
+        bounds.set(0, 0, view.getWidth(), view.getHeight());
+        binding.getRoot().offsetDescendantRectToMyCoords(view, bounds);
+    }
+}
@@ -17,30 +17,57 @@
 
 package dezz.status.widget;
 
+import android.app.TimePickerDialog;
 import android.content.Intent;
+import android.hardware.display.DisplayManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.text.method.LinkMovementMethod;
+import android.view.Display;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.core.app.ActivityCompat;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import dezz.status.widget.databinding.ActivityMainBinding;
 
 public class MainActivity extends AppCompatActivity {
     public static final int PERMISSION_REQUEST_CODE = 1001;
     public static final int OVERLAY_PERMISSION_REQUEST_CODE = 1002;
+    public static final int EXPORT_SETTINGS_REQUEST_CODE = 1003;
+    public static final int IMPORT_SETTINGS_REQUEST_CODE = 1004;
 
+    // Global settings live in the default namespace, everything else in the namespace of the overlay being edited
     private Preferences prefs;
+    private Preferences overlayPrefs;
+    private int editedOverlay = 0;
+    private OverlayPreview preview;
+    private int[] displayIds = new int[0];
+    private Profiles profiles;
+    private List<String> profileNames = new ArrayList<>();
+    // Benchmarks and settings files take a while, they must not block the UI thread
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
 
     ActivityMainBinding binding;
 
@@ -49,9 +76,12 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         prefs = new Preferences(this);
+        overlayPrefs = prefs;
+        profiles = new Profiles(this);
 
         binding = ActivityMainBinding.inflate(this.getLayoutInflater());
         setContentView(binding.getRoot());
+        preview = new OverlayPreview(this, binding.previewContainer);
 
         initializeViews();
 
@@ -60,9 +90,16 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        updateDiagnostics();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        backgroundExecutor.shutdownNow();
     }
 
     private void initializeViews() {
@@ -82,8 +119,61 @@ public class MainActivity extends AppCompatActivity {
                 }
             } else {
                 stopWidgetService();
-                prefs.overlayX.reset();
-                prefs.overlayY.reset();
+                for (int i = 0; i < Preferences.MAX_OVERLAYS; i++) {
+                    Preferences overlayPreferences = new Preferences(this, i);
+                    overlayPreferences.overlayX.reset();
+                    overlayPreferences.overlayY.reset();
+                }
+            }
+        });
+
+        String[] overlayCounts = new String[Preferences.MAX_OVERLAYS];
+        for (int i = 0; i < overlayCounts.length; i++) {
+            overlayCounts[i] = String.valueOf(i + 1);
+        }
+        ArrayAdapter<String> overlayCountAdapter = new ArrayAdapter<>(this, R.layout.spinner_dropdown_item, overlayCounts);
+        overlayCountAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        binding.overlayCountSpinner.setAdapter(overlayCountAdapter);
+        binding.overlayCountSpinner.setSelection(Math.max(0, Math.min(Preferences.MAX_OVERLAYS, prefs.overlayCount.get()) - 1));
+        binding.overlayCountSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                prefs.overlayCount.set(position + 1);
+                updateEditedOverlaySpinner(position + 1);
+                SettingsBus.postOverlaysChanged(SettingsBus.ALL_OVERLAYS);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        updateEditedOverlaySpinner(Math.max(1, Math.min(Preferences.MAX_OVERLAYS, prefs.overlayCount.get())));
+        binding.editedOverlaySpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                editedOverlay = position;
+                overlayPrefs = new Preferences(MainActivity.this, position);
+                bindOverlayPreferences();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        binding.displaySpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (position >= displayIds.length || overlayPrefs.displayId.get() == displayIds[position]) {
+                    return;
+                }
+                overlayPrefs.displayId.set(displayIds[position]);
+                onOverlayPreferenceChanged(true);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
             }
         });
 
@@ -94,14 +184,33 @@ public class MainActivity extends AppCompatActivity {
         );
         iconStylesAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
         binding.iconStyleSpinner.setAdapter(iconStylesAdapter);
-        binding.iconStyleSpinner.setSelection(prefs.iconStyle.get());
         binding.iconStyleSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                prefs.iconStyle.set(position);
-                if (WidgetService.isRunning()) {
-                    WidgetService.getInstance().applyPreferences();
+                overlayPrefs.iconStyle.set(position);
+                onOverlayPreferenceChanged(true);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        ArrayAdapter<String> renderModesAdapter = new ArrayAdapter<>(
+                this,
+                R.layout.spinner_dropdown_item,
+                getResources().getStringArray(R.array.render_modes)
+        );
+        renderModesAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        binding.renderModeSpinner.setAdapter(renderModesAdapter);
+        binding.renderModeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (overlayPrefs.renderMode.get() == position) {
+                    return;
                 }
+                overlayPrefs.renderMode.set(position);
+                onOverlayPreferenceChanged(true);
             }
 
             @Override
@@ -117,39 +226,370 @@ public class MainActivity extends AppCompatActivity {
         );
         calendarAlignmentAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
         binding.calendarAlignmentSpinner.setAdapter(calendarAlignmentAdapter);
-        binding.calendarAlignmentSpinner.setSelection(prefs.calendarAlignment.get());
         binding.calendarAlignmentSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                prefs.calendarAlignment.set(position);
-                if (WidgetService.isRunning()) {
-                    WidgetService.getInstance().applyPreferences();
+                overlayPrefs.calendarAlignment.set(position);
+                onOverlayPreferenceChanged(true);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        updateProfileSpinner();
+        binding.applyProfileButton.setOnClickListener(v -> {
+            String name = getSelectedProfile();
+            if (name == null) {
+                return;
+            }
+            if (!profiles.apply(name)) {
+                Toast.makeText(this, R.string.profile_apply_failed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            bindOverlayPreferences();
+            SettingsBus.postOverlaysChanged(SettingsBus.ALL_OVERLAYS);
+        });
+        binding.saveProfileButton.setOnClickListener(v -> showSaveProfileDialog());
+
+        ArrayAdapter<String> autoProfileModesAdapter = new ArrayAdapter<>(
+                this,
+                R.layout.spinner_dropdown_item,
+                getResources().getStringArray(R.array.auto_profile_modes)
+        );
+        autoProfileModesAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        binding.autoProfileModeSpinner.setAdapter(autoProfileModesAdapter);
+        binding.autoProfileModeSpinner.setSelection(prefs.autoProfileMode.get());
+        binding.autoProfileModeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (prefs.autoProfileMode.get() == position) {
+                    return;
+                }
+                prefs.autoProfileMode.set(position);
+                onProfileRulesChanged();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+        bindRuleProfileSpinner(binding.dayProfileSpinner, prefs.dayProfile);
+        bindRuleProfileSpinner(binding.nightProfileSpinner, prefs.nightProfile);
+        bindRuleTimeButton(binding.nightStartButton, prefs.nightStartMinutes);
+        bindRuleTimeButton(binding.dayStartButton, prefs.dayStartMinutes);
+
+        ViewBinder serviceBinder = new ViewBinder(this, committed -> SettingsBus.postNotificationChanged());
+        serviceBinder.bindCheckbox(binding.notificationMirrorSwitch, prefs.notificationMirror);
+
+        ViewBinder gnssBinder = new ViewBinder(this, committed -> {
+            if (committed) {
+                SettingsBus.postGnssFilterChanged();
+            }
+        });
+        gnssBinder.bindSeekbar(binding.gnssSmoothingSeekBar, binding.gnssSmoothingValueText, prefs.gnssSmoothingPercent,
+                value -> getString(R.string.percent_value_format, value));
+        gnssBinder.bindSeekbar(binding.gnssGoodEnterAccuracySeekBar, binding.gnssGoodEnterAccuracyValueText, prefs.gnssGoodEnterAccuracy,
+                value -> getString(R.string.meters_value_format, value));
+        gnssBinder.bindSeekbar(binding.gnssGoodExitAccuracySeekBar, binding.gnssGoodExitAccuracyValueText, prefs.gnssGoodExitAccuracy,
+                value -> getString(R.string.meters_value_format, value));
+        gnssBinder.bindSeekbar(binding.gnssMinDwellSeekBar, binding.gnssMinDwellValueText, prefs.gnssMinDwellSeconds,
+                value -> getString(R.string.seconds_value_format, value));
+        binding.deleteProfileButton.setOnClickListener(v -> {
+            String name = getSelectedProfile();
+            if (name != null) {
+                profiles.delete(name);
+                updateProfileSpinner();
+            }
+        });
+        binding.exportSettingsButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_TITLE, "status-widget-settings.json");
+            startActivityForResult(intent, EXPORT_SETTINGS_REQUEST_CODE);
+        });
+        binding.importSettingsButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            // File managers often don't know the JSON type
+            intent.setType("*/*");
+            startActivityForResult(intent, IMPORT_SETTINGS_REQUEST_CODE);
+        });
+
+        binding.renderBenchmarkButton.setOnClickListener(v -> {
+            // The views it creates are never attached, so they can live on the benchmark thread
+            Preferences benchmarkPrefs = overlayPrefs;
+            runBenchmark(v, () -> RenderBenchmark.run(this, benchmarkPrefs));
+        });
+        binding.preferencesBenchmarkButton.setOnClickListener(v -> runBenchmark(v, () -> PreferencesBenchmark.run(this)));
+
+        bindOverlayPreferences();
+    }
+
+    private void runBenchmark(View button, Supplier<String> benchmark) {
+        button.setEnabled(false);
+        backgroundExecutor.execute(() -> {
+            String result = benchmark.get();
+            runOnUiThread(() -> {
+                button.setEnabled(true);
+                if (!isDestroyed()) {
+                    binding.diagnosticsText.setText(String.format("%s\n\n%s", getDiagnosticsText(), result));
+                }
+            });
+        });
+    }
+
+    private void updateDiagnostics() {
+        binding.diagnosticsText.setText(getDiagnosticsText());
+    }
+
+    private String getDiagnosticsText() {
+        if (StartupTrace.getServiceToFirstFrameMillis() < 0) {
+            return getString(R.string.diagnostics_not_started);
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(getString(R.string.diagnostics_startup_format, StartupTrace.getBootToFirstFrameMillis(), StartupTrace.getServiceToFirstFrameMillis()));
+        text.append('\n').append(getString(R.string.diagnostics_render_format, RenderStats.getLayoutCount(), RenderStats.getDrawCount()));
+        int[] tickDelays = RenderStats.getTickDelayHistogram();
+        text.append('\n').append(getString(R.string.diagnostics_tick_delay_format,
+                tickDelays[0], tickDelays[1], tickDelays[2], tickDelays[3], tickDelays[4], tickDelays[5]));
+        text.append('\n').append(getString(R.string.diagnostics_gnss_flips_format,
+                GnssFixFilter.getRawFlipsPerHour(), GnssFixFilter.getFilteredFlipsPerHour()));
+        text.append('\n').append(getString(R.string.diagnostics_budget_format,
+                PerfBudget.getTotal(PerfBudget.TEXT_UPDATES), PerfBudget.getOverruns(PerfBudget.TEXT_UPDATES),
+                PerfBudget.getTotal(PerfBudget.ICON_UPDATES), PerfBudget.getOverruns(PerfBudget.ICON_UPDATES),
+                PerfBudget.getTotal(PerfBudget.WINDOW_UPDATES), PerfBudget.getOverruns(PerfBudget.WINDOW_UPDATES),
+                PerfBudget.getTotal(PerfBudget.PREFERENCE_WRITES), PerfBudget.getOverruns(PerfBudget.PREFERENCE_WRITES)));
+        return text.toString();
+    }
+
+    private void updateProfileSpinner() {
+        profileNames = profiles.getNames();
+        List<String> items = profileNames.isEmpty() ? List.of(getString(R.string.no_profiles)) : profileNames;
+        ArrayAdapter<String> profileAdapter = new ArrayAdapter<>(this, R.layout.spinner_dropdown_item, items);
+        profileAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        binding.profileSpinner.setAdapter(profileAdapter);
+        binding.profileSpinner.setSelection(Math.max(0, profileNames.indexOf(prefs.activeProfile.get())));
+
+        List<String> ruleItems = new ArrayList<>();
+        ruleItems.add(getString(R.string.no_profile));
+        ruleItems.addAll(profileNames);
+        for (Spinner spinner : List.of(binding.dayProfileSpinner, binding.nightProfileSpinner)) {
+            ArrayAdapter<String> ruleAdapter = new ArrayAdapter<>(this, R.layout.spinner_dropdown_item, ruleItems);
+            ruleAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+            spinner.setAdapter(ruleAdapter);
+        }
+        binding.dayProfileSpinner.setSelection(profileNames.indexOf(prefs.dayProfile.get()) + 1);
+        binding.nightProfileSpinner.setSelection(profileNames.indexOf(prefs.nightProfile.get()) + 1);
+    }
+
+    // The first item means no profile
+    private void bindRuleProfileSpinner(Spinner spinner, Preferences.Str preference) {
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                String profile = position > 0 && position <= profileNames.size() ? profileNames.get(position - 1) : "";
+                if (profile.equals(preference.get())) {
+                    return;
                 }
+                preference.set(profile);
+                onProfileRulesChanged();
             }
 
             @Override
             public void onNothingSelected(AdapterView<?> parent) {
             }
         });
+    }
+
+    private void bindRuleTimeButton(Button button, Preferences.Int preference) {
+        button.setText(formatMinutes(preference.get()));
+        button.setOnClickListener(v -> {
+            int minutes = preference.get();
+            new TimePickerDialog(this, (view, hourOfDay, minute) -> {
+                preference.set(hourOfDay * 60 + minute);
+                button.setText(formatMinutes(preference.get()));
+                onProfileRulesChanged();
+            }, minutes / 60, minutes % 60, true).show();
+        });
+    }
+
+    private static String formatMinutes(int minutes) {
+        return String.format(Locale.ROOT, "%02d:%02d", minutes / 60, minutes % 60);
+    }
+
+    private void onProfileRulesChanged() {
+        SettingsBus.postProfileRulesChanged();
+    }
+
+    @Nullable
+    private String getSelectedProfile() {
+        int position = binding.profileSpinner.getSelectedItemPosition();
+        return position >= 0 && position < profileNames.size() ? profileNames.get(position) : null;
+    }
+
+    private void showSaveProfileDialog() {
+        EditText nameEdit = new EditText(this);
+        nameEdit.setHint(R.string.profile_name);
+        nameEdit.setSingleLine();
+        String selectedProfile = getSelectedProfile();
+        if (selectedProfile != null) {
+            nameEdit.setText(selectedProfile);
+            nameEdit.selectAll();
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.save_profile)
+                .setView(nameEdit)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    String name = nameEdit.getText().toString().trim();
+                    if (!name.isEmpty()) {
+                        profiles.save(name);
+                        updateProfileSpinner();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void exportSettings(Uri uri) {
+        backgroundExecutor.execute(() -> {
+            boolean exported;
+            try (OutputStream output = getContentResolver().openOutputStream(uri)) {
+                if (output == null) {
+                    throw new IOException("Can't open " + uri);
+                }
+                profiles.exportTo(output);
+                exported = true;
+            } catch (IOException e) {
+                exported = false;
+            }
+            boolean result = exported;
+            runOnUiThread(() -> {
+                if (result) {
+                    Toast.makeText(this, R.string.settings_exported, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, R.string.settings_export_failed, Toast.LENGTH_LONG).show();
+                }
+            });
+        });
+    }
+
+    // The file is read and checked in the background, the settings are changed on the UI thread
+    private void importSettings(Uri uri) {
+        backgroundExecutor.execute(() -> {
+            Profiles.ImportedSettings imported;
+            try (InputStream input = getContentResolver().openInputStream(uri)) {
+                if (input == null) {
+                    throw new IOException("Can't open " + uri);
+                }
+                imported = profiles.readImport(input);
+            } catch (IOException e) {
+                imported = null;
+            }
+            Profiles.ImportedSettings result = imported;
+            runOnUiThread(() -> applyImportedSettings(result));
+        });
+    }
+
+    private void applyImportedSettings(@Nullable Profiles.ImportedSettings imported) {
+        if (isDestroyed()) {
+            return;
+        }
+        try {
+            if (imported != null) {
+                profiles.applyImport(imported);
+            }
+        } catch (IOException e) {
+            imported = null;
+        }
+        if (imported == null) {
+            Toast.makeText(this, R.string.settings_import_failed, Toast.LENGTH_LONG).show();
+            return;
+        }
 
-        ViewBinder binder = new ViewBinder(this);
+        Toast.makeText(this, R.string.settings_imported, Toast.LENGTH_SHORT).show();
+        SettingsBus.postOverlaysChanged(SettingsBus.ALL_OVERLAYS);
+        // The overlay count may have changed as well, so all controls are set up again
+        recreate();
+    }
+
+    private void updateEditedOverlaySpinner(int overlayCount) {
+        String[] overlayNames = new String[overlayCount];
+        for (int i = 0; i < overlayCount; i++) {
+            overlayNames[i] = getString(R.string.overlay_name_format, i + 1);
+        }
+        ArrayAdapter<String> editedOverlayAdapter = new ArrayAdapter<>(this, R.layout.spinner_dropdown_item, overlayNames);
+        editedOverlayAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+
+        int selection = Math.min(binding.editedOverlaySpinner.getSelectedItemPosition(), overlayCount - 1);
+        binding.editedOverlaySpinner.setAdapter(editedOverlayAdapter);
+        binding.editedOverlaySpinner.setSelection(Math.max(0, selection));
+    }
+
+    private void updateDisplaySpinner() {
+        int selectedDisplayId = overlayPrefs.displayId.get();
+        List<Integer> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Display display : getSystemService(DisplayManager.class).getDisplays()) {
+            ids.add(display.getDisplayId());
+            names.add(getString(R.string.display_name_format, display.getDisplayId(), display.getName()));
+        }
+        // Keep a display that is not connected right now, so the choice is not lost
+        if (!ids.contains(selectedDisplayId)) {
+            ids.add(selectedDisplayId);
+            names.add(getString(R.string.display_missing_format, selectedDisplayId));
+        }
+
+        displayIds = new int[ids.size()];
+        for (int i = 0; i < displayIds.length; i++) {
+            displayIds[i] = ids.get(i);
+        }
 
-        binder.bindCheckbox(binding.showDateSwitch, prefs.showDate);
-        binder.bindCheckbox(binding.showTimeSwitch, prefs.showTime);
-        binder.bindCheckbox(binding.showDaySwitch, prefs.showDayOfTheWeek);
-        binder.bindCheckbox(binding.showWiFiSwitch, prefs.showWifiIcon);
-        binder.bindCheckbox(binding.showGnssSwitch, prefs.showGnssIcon);
-        binder.bindCheckbox(binding.showFullDayAndMonthSwitch, prefs.showFullDayAndMonth);
-        binder.bindCheckbox(binding.oneLineLayoutSwitch, prefs.oneLineLayout);
+        ArrayAdapter<String> displayAdapter = new ArrayAdapter<>(this, R.layout.spinner_dropdown_item, names);
+        displayAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        binding.displaySpinner.setAdapter(displayAdapter);
+        binding.displaySpinner.setSelection(ids.indexOf(selectedDisplayId));
+    }
 
-        binder.bindSizeSeekbar(binding.iconSizeSeekBar, binding.iconSizeValueText, prefs.iconSize);
-        binder.bindSizeSeekbar(binding.timeFontSizeSeekBar, binding.timeFontSizeValueText, prefs.timeFontSize);
-        binder.bindSizeSeekbar(binding.dateFontSizeSeekBar, binding.dateFontSizeValueText, prefs.dateFontSize);
-        binder.bindSizeSeekbar(binding.spacingBetweenTextsAndIconsSeekBar, binding.spacingBetweenTextsAndIconsValueText, prefs.spacingBetweenTextsAndIcons);
-        binder.bindColorComponentSeekbar(binding.textOutlineAlphaSeekBar, binding.textOutlineAlphaValueText, prefs.textOutlineAlpha);
-        binder.bindColorComponentSeekbar(binding.backgroundAlphaSeekBar, binding.backgroundAlphaValueText, prefs.backgroundAlpha);
-        binder.bindOffsetSeekbar(binding.adjustTimeYSeekBar, binding.adjustTimeYValueText, prefs.adjustTimeY);
-        binder.bindOffsetSeekbar(binding.adjustDateYSeekBar, binding.adjustDateYValueText, prefs.adjustDateY);
+    private void bindOverlayPreferences() {
+        updateDisplaySpinner();
+        binding.iconStyleSpinner.setSelection(overlayPrefs.iconStyle.get());
+        binding.renderModeSpinner.setSelection(overlayPrefs.renderMode.get());
+        binding.calendarAlignmentSpinner.setSelection(overlayPrefs.calendarAlignment.get());
+
+        ViewBinder binder = new ViewBinder(this, this::onOverlayPreferenceChanged);
+
+        binder.bindCheckbox(binding.showDateSwitch, overlayPrefs.showDate);
+        binder.bindCheckbox(binding.showTimeSwitch, overlayPrefs.showTime);
+        binder.bindCheckbox(binding.showSecondsSwitch, overlayPrefs.showSeconds);
+        binder.bindCheckbox(binding.showDaySwitch, overlayPrefs.showDayOfTheWeek);
+        binder.bindCheckbox(binding.showWiFiSwitch, overlayPrefs.showWifiIcon);
+        binder.bindCheckbox(binding.showGnssSwitch, overlayPrefs.showGnssIcon);
+        binder.bindCheckbox(binding.showFullDayAndMonthSwitch, overlayPrefs.showFullDayAndMonth);
+        binder.bindCheckbox(binding.oneLineLayoutSwitch, overlayPrefs.oneLineLayout);
+        binder.bindCheckbox(binding.pixelShiftSwitch, overlayPrefs.pixelShift);
+
+        binder.bindSizeSeekbar(binding.iconSizeSeekBar, binding.iconSizeValueText, overlayPrefs.iconSize);
+        binder.bindSizeSeekbar(binding.timeFontSizeSeekBar, binding.timeFontSizeValueText, overlayPrefs.timeFontSize);
+        binder.bindSizeSeekbar(binding.dateFontSizeSeekBar, binding.dateFontSizeValueText, overlayPrefs.dateFontSize);
+        binder.bindSizeSeekbar(binding.spacingBetweenTextsAndIconsSeekBar, binding.spacingBetweenTextsAndIconsValueText, overlayPrefs.spacingBetweenTextsAndIcons);
+        binder.bindColorComponentSeekbar(binding.textOutlineAlphaSeekBar, binding.textOutlineAlphaValueText, overlayPrefs.textOutlineAlpha);
+        binder.bindColorComponentSeekbar(binding.backgroundAlphaSeekBar, binding.backgroundAlphaValueText, overlayPrefs.backgroundAlpha);
+        binder.bindOffsetSeekbar(binding.adjustTimeYSeekBar, binding.adjustTimeYValueText, overlayPrefs.adjustTimeY);
+        binder.bindOffsetSeekbar(binding.adjustDateYSeekBar, binding.adjustDateYValueText, overlayPrefs.adjustDateY);
+
+        preview.update(overlayPrefs);
+    }
+
+    // The preview follows every change, the overlay itself only committed ones
+    private void onOverlayPreferenceChanged(boolean committed) {
+        preview.update(overlayPrefs);
+        if (committed) {
+            SettingsBus.postOverlaysChanged(1 << editedOverlay);
+        }
     }
 
     private void startWidgetService() {
@@ -202,6 +642,15 @@ public class MainActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
+        if ((requestCode == EXPORT_SETTINGS_REQUEST_CODE || requestCode == IMPORT_SETTINGS_REQUEST_CODE)
+                && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            if (requestCode == EXPORT_SETTINGS_REQUEST_CODE) {
+                exportSettings(data.getData());
+            } else {
+                importSettings(data.getData());
+            }
+        }
+
         if (requestCode == OVERLAY_PERMISSION_REQUEST_CODE) {
             if (Permissions.checkOverlayPermission(this)) {
                 startWidgetService();
@@ -16,6 +16,7 @@ public class OutlineTextView extends AppCompatTextView {
     private boolean isDrawing = false;
     private int outlineColor = 0;
     private float outlineWidth = DEFAULT_OUTLINE_WIDTH;
+    private boolean countStats = false;
 
     public OutlineTextView(@NonNull Context context) {
         super(context);
@@ -47,6 +48,10 @@ public class OutlineTextView extends AppCompatTextView {
         invalidate();
     }
 
+    public void setCountStats(boolean countStats) {
+        this.countStats = countStats;
+    }
+
     @Override
     public void invalidate() {
         if (!isDrawing) {
@@ -56,6 +61,9 @@ public class OutlineTextView extends AppCompatTextView {
 
     @Override
     public void onDraw(Canvas canvas) {
+        if (countStats) {
+            RenderStats.onDraw();
+        }
         if (outlineWidth <= 0) {
             super.onDraw(canvas);
             return;
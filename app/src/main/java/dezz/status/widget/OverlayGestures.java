@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.view.HapticFeedbackConstants;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+/**
+ * Tells taps, long presses, drags and flings on an overlay apart using the system touch slop and
+ * fling velocities. Positions are reported in screen coordinates relative to the touch down, since
+ * the window itself moves under the finger. Nothing is allocated while a gesture is handled.
+ */
+final class OverlayGestures implements View.OnTouchListener {
+    interface Listener {
+        void onTap(int x, int y);
+
+        void onLongPress();
+
+        void onDragStart();
+
+        void onDrag(int dx, int dy);
+
+        /**
+         * Called when the finger is lifted after a drag, with the fling velocity in pixels per
+         * second or zero if the drag ended without a fling.
+         */
+        void onDragEnd(float velocityX, float velocityY);
+    }
+
+    private final View view;
+    private final Listener listener;
+    private final int touchSlopSquare;
+    private final int minFlingVelocity;
+    private final int maxFlingVelocity;
+    private final long longPressTimeout;
+
+    private VelocityTracker velocityTracker = null;
+    private float downRawX;
+    private float downRawY;
+    private boolean dragging = false;
+    private boolean longPressed = false;
+
+    private final Runnable longPressRunnable = this::onLongPress;
+
+    OverlayGestures(View view, Listener listener) {
+        this.view = view;
+        this.listener = listener;
+
+        ViewConfiguration configuration = ViewConfiguration.get(view.getContext());
+        int touchSlop = configuration.getScaledTouchSlop();
+        touchSlopSquare = touchSlop * touchSlop;
+        minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        longPressTimeout = ViewConfiguration.getLongPressTimeout();
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN -> {
+                downRawX = event.getRawX();
+                downRawY = event.getRawY();
+                dragging = false;
+                longPressed = false;
+                if (velocityTracker == null) {
+                    velocityTracker = VelocityTracker.obtain();
+                } else {
+                    velocityTracker.clear();
+                }
+                addMovement(event);
+                view.postDelayed(longPressRunnable, longPressTimeout);
+            }
+            case MotionEvent.ACTION_MOVE -> {
+                addMovement(event);
+                if (longPressed) {
+                    return true;
+                }
+                float dx = event.getRawX() - downRawX;
+                float dy = event.getRawY() - downRawY;
+                if (!dragging && dx * dx + dy * dy > touchSlopSquare) {
+                    dragging = true;
+                    view.removeCallbacks(longPressRunnable);
+                    listener.onDragStart();
+                }
+                if (dragging) {
+                    listener.onDrag((int) dx, (int) dy);
+                }
+            }
+            case MotionEvent.ACTION_UP -> {
+                view.removeCallbacks(longPressRunnable);
+                if (dragging) {
+                    addMovement(event);
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    float velocityX = velocityTracker.getXVelocity();
+                    float velocityY = velocityTracker.getYVelocity();
+                    if (Math.max(Math.abs(velocityX), Math.abs(velocityY)) < minFlingVelocity) {
+                        velocityX = 0;
+                        velocityY = 0;
+                    }
+                    dragging = false;
+                    listener.onDragEnd(velocityX, velocityY);
+                } else if (!longPressed) {
+                    listener.onTap((int) event.getX(), (int) event.getY());
+                }
+            }
+            case MotionEvent.ACTION_CANCEL -> {
+                view.removeCallbacks(longPressRunnable);
+                if (dragging) {
+                    dragging = false;
+                    listener.onDragEnd(0, 0);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isDragging() {
+        return dragging;
+    }
+
+    void release() {
+        view.removeCallbacks(longPressRunnable);
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+    }
+
+    // The tracker gets screen coordinates, in window coordinates the finger barely moves
+    private void addMovement(MotionEvent event) {
+        float offsetX = event.getRawX() - event.getX();
+        float offsetY = event.getRawY() - event.getY();
+        event.offsetLocation(offsetX, offsetY);
+        velocityTracker.addMovement(event);
+        event.offsetLocation(-offsetX, -offsetY);
+    }
+
+    private void onLongPress() {
+        longPressed = true;
+        view.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        listener.onLongPress();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.widget.LinearLayout;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public class OverlayLayout extends LinearLayout {
+    public interface WindowVisibilityListener {
+        void onWindowVisibilityChanged(int visibility);
+    }
+
+    private WindowVisibilityListener windowVisibilityListener = null;
+    private Runnable firstDrawCallback = null;
+    private Runnable layoutCallback = null;
+    private boolean countStats = false;
+
+    public OverlayLayout(@NonNull Context context) {
+        super(context);
+    }
+
+    public OverlayLayout(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public OverlayLayout(@NonNull Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public void setWindowVisibilityListener(@Nullable WindowVisibilityListener listener) {
+        this.windowVisibilityListener = listener;
+    }
+
+    // The callback is posted rather than run from the draw pass, so the frame gets to the display first
+    public void setFirstDrawCallback(@Nullable Runnable callback) {
+        this.firstDrawCallback = callback;
+    }
+
+    // Runs after every layout pass, any child moving or resizing goes through it
+    public void setLayoutCallback(@Nullable Runnable callback) {
+        this.layoutCallback = callback;
+    }
+
+    public void setCountStats(boolean countStats) {
+        this.countStats = countStats;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (layoutCallback != null) {
+            layoutCallback.run();
+        }
+        if (countStats) {
+            RenderStats.onLayout();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(@NonNull Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (firstDrawCallback != null) {
+            post(firstDrawCallback);
+            firstDrawCallback = null;
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (windowVisibilityListener != null) {
+            windowVisibilityListener.onWindowVisibilityChanged(visibility);
+        }
+    }
+}
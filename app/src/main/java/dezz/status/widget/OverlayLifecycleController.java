@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Display;
+
+import androidx.annotation.StringRes;
+
+/**
+ * Tracks whether the overlays can actually be seen (a window is visible and a display hosting
+ * them is on) and tells the service when all state sources should be suspended or resumed.
+ * It is also the only display listener of the service, so it forwards added and removed displays.
+ */
+public class OverlayLifecycleController implements DisplayManager.DisplayListener {
+    public interface Listener {
+        void onSuspendedChanged(boolean suspended);
+
+        void onDisplayAdded(int displayId);
+
+        void onDisplayRemoved(int displayId);
+    }
+
+    private static final String TAG = "OverlayLifecycle";
+
+    private final DisplayManager displayManager;
+    private final Handler handler;
+    private final Listener listener;
+
+    private boolean started = false;
+    private boolean overlayVisible = true;
+    private boolean displayOn = true;
+    private boolean suspended = false;
+    private boolean activeWhileHidden = false;
+    private int[] trackedDisplays = {Display.DEFAULT_DISPLAY};
+
+    public OverlayLifecycleController(Context context, Handler handler, Listener listener) {
+        this.displayManager = context.getSystemService(DisplayManager.class);
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        displayManager.registerDisplayListener(this, handler);
+        displayOn = isAnyTrackedDisplayOn();
+        update();
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        displayManager.unregisterDisplayListener(this);
+    }
+
+    // The displays that currently host attached overlays
+    public void setTrackedDisplays(int[] displayIds) {
+        trackedDisplays = displayIds;
+        if (started) {
+            displayOn = isAnyTrackedDisplayOn();
+            update();
+        }
+    }
+
+    public void setOverlayVisible(boolean visible) {
+        if (overlayVisible == visible) {
+            return;
+        }
+        overlayVisible = visible;
+        update();
+    }
+
+    // Keeps the sources running while the display is on but the overlays are hidden, e.g. for the
+    // notification to mirror the state
+    public void setActiveWhileHidden(boolean active) {
+        if (activeWhileHidden == active) {
+            return;
+        }
+        activeWhileHidden = active;
+        update();
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public boolean isHiddenWhileDisplayOn() {
+        return displayOn && !overlayVisible;
+    }
+
+    @StringRes
+    public int getStateSummary() {
+        if (!displayOn) {
+            return R.string.notification_state_display_off;
+        }
+        if (!overlayVisible) {
+            return R.string.notification_state_overlay_hidden;
+        }
+        return R.string.notification_content;
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+        listener.onDisplayAdded(displayId);
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+        listener.onDisplayRemoved(displayId);
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (!isTracked(displayId)) {
+            return;
+        }
+        boolean on = isAnyTrackedDisplayOn();
+        if (displayOn != on) {
+            displayOn = on;
+            update();
+        }
+    }
+
+    private void update() {
+        boolean newSuspended = !displayOn || (!overlayVisible && !activeWhileHidden);
+        if (suspended == newSuspended) {
+            return;
+        }
+        suspended = newSuspended;
+        Log.d(TAG, "Sources " + (suspended ? "suspended" : "resumed") + " (display on = " + displayOn + ", overlay visible = " + overlayVisible + ")");
+        listener.onSuspendedChanged(suspended);
+    }
+
+    private boolean isTracked(int displayId) {
+        for (int trackedDisplay : trackedDisplays) {
+            if (trackedDisplay == displayId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAnyTrackedDisplayOn() {
+        for (int trackedDisplay : trackedDisplays) {
+            if (isDisplayOn(displayManager.getDisplay(trackedDisplay))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDisplayOn(Display display) {
+        if (display == null) {
+            return false;
+        }
+        return switch (display.getState()) {
+            case Display.STATE_OFF, Display.STATE_DOZE, Display.STATE_DOZE_SUSPEND -> false;
+            default -> true;
+        };
+    }
+}
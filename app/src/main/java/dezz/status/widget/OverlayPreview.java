@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import dezz.status.widget.WidgetService.GnssState;
+import dezz.status.widget.WidgetService.WiFiState;
+
+/**
+ * Renders the edited overlay inside the settings screen with the same views the overlay window
+ * uses, so a setting can be tried out without updating the real overlay on every change.
+ */
+final class OverlayPreview {
+    private final Context context;
+    private final FrameLayout container;
+
+    private StatusView statusView = null;
+    private int renderMode = -1;
+
+    OverlayPreview(Context context, FrameLayout container) {
+        this.context = context;
+        this.container = container;
+    }
+
+    void update(Preferences prefs) {
+        if (statusView == null || renderMode != prefs.renderMode.get()) {
+            renderMode = prefs.renderMode.get();
+            statusView = OverlayWindow.createStatusView(context, renderMode);
+            container.removeAllViews();
+            container.addView(statusView.getRoot(), new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        }
+
+        statusView.applyPreferences(prefs);
+
+        Date now = new Date();
+        Locale locale = Locale.getDefault();
+        if (prefs.showTime.get()) {
+            statusView.setTimeText(new SimpleDateFormat(ClockFormat.getTimePattern(prefs), locale).format(now));
+        }
+        if (prefs.showDate.get() || prefs.showDayOfTheWeek.get()) {
+            statusView.setDateText(new SimpleDateFormat(ClockFormat.getDatePattern(prefs), locale).format(now));
+        }
+        statusView.setWifiIcon(OverlayWindow.getWifiIconResource(prefs, WiFiState.INTERNET));
+        statusView.setGnssIcon(OverlayWindow.getGnssIconResource(prefs, GnssState.GOOD));
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.PixelFormat;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+import android.view.Display;
+import android.view.Gravity;
+import android.view.Menu;
+import android.view.SubMenu;
+import android.view.View;
+import android.view.WindowManager;
+import android.view.animation.DecelerateInterpolator;
+import android.widget.PopupMenu;
+import android.widget.Toast;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import dezz.status.widget.WidgetService.GnssState;
+import dezz.status.widget.WidgetService.WiFiState;
+
+/**
+ * A single overlay window with its own preference namespace and target display. State sources
+ * and the clock ticker are owned by {@link WidgetService} and shared between all overlays.
+ */
+public class OverlayWindow {
+    private static final String TAG = "OverlayWindow";
+
+    private static final long SNAP_DURATION = 250;
+    private static final long POSITION_SAVE_DELAY = 5000;
+
+    // The window walks around its stored position, a step every few minutes, against burn-in
+    private static final long PIXEL_SHIFT_INTERVAL = 3 * 60 * 1000;
+    private static final int[] PIXEL_SHIFT_X = {0, 2, 2, 0, -2, -2, -2, 0, 2};
+    private static final int[] PIXEL_SHIFT_Y = {0, 0, 2, 2, 2, 0, -2, -2, -2};
+    private static final int MENU_SETTINGS = 1;
+    private static final int MENU_STOP = 2;
+    private static final int MENU_PROFILES_GROUP = 1;
+
+    private static final int[] GNSS_ICONS_MONO = {
+            R.drawable.ic_mono_gps_off,
+            R.drawable.ic_mono_gps_bad,
+            R.drawable.ic_mono_gps_good
+    };
+    private static final int[] WIFI_ICONS_MONO = {
+            R.drawable.ic_mono_wifi_off,
+            R.drawable.ic_mono_wifi_no_internet,
+            R.drawable.ic_mono_wifi_internet
+    };
+
+    private static final int[] GNSS_ICONS_COLOR = {
+            R.drawable.ic_color_gps_off,
+            R.drawable.ic_color_gps_bad,
+            R.drawable.ic_color_gps_good
+    };
+    private static final int[] WIFI_ICONS_COLOR = {
+            R.drawable.ic_color_wifi_off,
+            R.drawable.ic_color_wifi_no_internet,
+            R.drawable.ic_color_wifi_internet
+    };
+
+    private static final int[] GNSS_ICONS_MONOCOLOR = {
+            R.drawable.ic_monocolor_gps_off,
+            R.drawable.ic_monocolor_gps_bad,
+            R.drawable.ic_monocolor_gps_good
+    };
+    private static final int[] WIFI_ICONS_MONOCOLOR = {
+            R.drawable.ic_monocolor_wifi_off,
+            R.drawable.ic_monocolor_wifi_no_internet,
+            R.drawable.ic_monocolor_wifi_internet
+    };
+
+    private final WidgetService service;
+    private final Preferences prefs;
+
+    private int displayId;
+    private Context context;
+    private WindowManager windowManager;
+    private WindowManager.LayoutParams params;
+    private StatusView statusView;
+    private int renderMode;
+    private boolean windowVisible = false;
+
+    private OverlayGestures gestures;
+    private ValueAnimator snapAnimator = null;
+    private int initialX;
+    private int initialY;
+    private int shiftX = 0;
+    private int shiftY = 0;
+    private boolean positionDirty = false;
+    private final Runnable savePositionRunnable = this::flushPosition;
+
+    private GnssState gnssState = GnssState.OFF;
+    private WiFiState wifiState = WiFiState.OFF;
+    private int gnssIconResource = 0;
+    private int wifiIconResource = 0;
+
+    private String externalText = "";
+
+    private Locale formatLocale = null;
+    private SimpleDateFormat timeFormat = null;
+    private SimpleDateFormat dateFormat = null;
+
+    public OverlayWindow(WidgetService service, Preferences prefs, GnssState gnssState, WiFiState wifiState) {
+        this.service = service;
+        this.prefs = prefs;
+        this.displayId = prefs.displayId.get();
+        this.renderMode = prefs.renderMode.get();
+        this.gnssState = gnssState;
+        this.wifiState = wifiState;
+    }
+
+    public Preferences getPreferences() {
+        return prefs;
+    }
+
+    public int getDisplayId() {
+        return displayId;
+    }
+
+    public boolean isAttached() {
+        return statusView != null;
+    }
+
+    public boolean isWindowVisible() {
+        return windowVisible;
+    }
+
+    // Adds the window to the target display. A missing display is not an error: the overlay stays
+    // detached until the display is added. Returns false only if the window could not be added.
+    public boolean attach() {
+        if (statusView != null) {
+            return true;
+        }
+
+        displayId = prefs.displayId.get();
+        renderMode = prefs.renderMode.get();
+        Display display = service.getSystemService(DisplayManager.class).getDisplay(displayId);
+        if (display == null) {
+            Log.d(TAG, "Display " + displayId + " is not available, waiting for it");
+            return true;
+        }
+
+        context = service.createDisplayContext(display);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            context = context.createWindowContext(WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY, null);
+        }
+        windowManager = context.getSystemService(WindowManager.class);
+
+        // Create the overlay view
+        statusView = createStatusView(context, renderMode);
+        statusView.setCountStats(true);
+        gnssIconResource = 0;
+        wifiIconResource = 0;
+        statusView.setWindowVisibilityListener(visibility -> {
+            windowVisible = visibility == View.VISIBLE;
+            service.onOverlayVisibilityChanged();
+        });
+
+        applyViewPreferences();
+
+        // Set up drag listener
+        setupGestures();
+
+        // Add the view to the window
+        params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                ,
+                PixelFormat.TRANSLUCENT
+        );
+        params.gravity = Gravity.TOP | Gravity.START;
+        int step = getPixelShiftStep();
+        shiftX = PIXEL_SHIFT_X[step];
+        shiftY = PIXEL_SHIFT_Y[step];
+        params.x = prefs.overlayX.get() + shiftX;
+        params.y = prefs.overlayY.get() + shiftY;
+
+        try {
+            windowManager.addView(statusView.getRoot(), params);
+        } catch (Exception e) {
+            statusView.setWindowVisibilityListener(null);
+            statusView = null;
+            return false;
+        }
+        return true;
+    }
+
+    public static StatusView createStatusView(Context context, int renderMode) {
+        return switch (renderMode) {
+            case Preferences.RENDER_MODE_SINGLE_VIEW -> new StatusWidgetView(context, false, false);
+            case Preferences.RENDER_MODE_LAYERED -> new StatusWidgetView(context, true, false);
+            case Preferences.RENDER_MODE_GLYPH_ATLAS -> new StatusWidgetView(context, true, true);
+            default -> new LayoutStatusView(context);
+        };
+    }
+
+    public void detach() {
+        if (statusView == null) {
+            return;
+        }
+        // Removing the window reports it as gone, which must not count as the overlay being hidden
+        statusView.setWindowVisibilityListener(null);
+        if (snapAnimator != null) {
+            snapAnimator.cancel();
+        }
+        gestures.release();
+        gestures = null;
+        statusView.getRoot().removeCallbacks(savePositionRunnable);
+        flushPosition();
+        params = null;
+        try {
+            windowManager.removeView(statusView.getRoot());
+        } catch (Exception e) {
+            // The window is already gone together with its display
+            Log.d(TAG, "Failed to remove the overlay from display " + displayId, e);
+        }
+        statusView = null;
+        windowVisible = false;
+    }
+
+    public void setFirstDrawCallback(Runnable callback) {
+        if (statusView != null) {
+            statusView.setFirstDrawCallback(callback);
+        }
+    }
+
+    // Returns true if the window had to be recreated, e.g. for another display
+    public boolean applyPreferences() {
+        if (displayId != prefs.displayId.get() || renderMode != prefs.renderMode.get()) {
+            detach();
+            attach();
+            return true;
+        }
+        if (statusView != null) {
+            applyViewPreferences();
+        }
+        return false;
+    }
+
+    private void applyViewPreferences() {
+        statusView.applyPreferences(prefs);
+        statusView.setExternalText(externalText);
+
+        updateDateTime();
+        updateWifiStatus();
+        updateGnssStatus();
+    }
+
+    public boolean needsClock() {
+        return prefs.showDate.get() || prefs.showTime.get() || prefs.pixelShift.get();
+    }
+
+    public boolean needsSeconds() {
+        return prefs.showTime.get() && prefs.showSeconds.get();
+    }
+
+    public boolean needsWifiState() {
+        return prefs.showWifiIcon.get();
+    }
+
+    public boolean needsGnssState() {
+        return prefs.showGnssIcon.get();
+    }
+
+    public void updateDateTime() {
+        if (statusView == null) {
+            return;
+        }
+        updatePixelShift();
+
+        boolean showTime = prefs.showTime.get();
+        boolean showDate = prefs.showDate.get() || prefs.showDayOfTheWeek.get();
+
+        if (!showTime && !showDate) {
+            return;
+        }
+
+        Date now = new Date();
+        if (showTime) {
+            statusView.setTimeText(getFormat(ClockFormat.getTimePattern(prefs), true).format(now));
+        }
+        if (showDate) {
+            statusView.setDateText(getFormat(ClockFormat.getDatePattern(prefs), false).format(now));
+        }
+    }
+
+    // The formatters are kept between ticks and only rebuilt when the pattern or the locale changes
+    private SimpleDateFormat getFormat(String pattern, boolean time) {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(formatLocale)) {
+            formatLocale = locale;
+            timeFormat = null;
+            dateFormat = null;
+        }
+        if (time) {
+            if (timeFormat == null || !pattern.equals(timeFormat.toPattern())) {
+                timeFormat = new SimpleDateFormat(pattern, locale);
+            }
+            return timeFormat;
+        }
+        if (dateFormat == null || !pattern.equals(dateFormat.toPattern())) {
+            dateFormat = new SimpleDateFormat(pattern, locale);
+        }
+        return dateFormat;
+    }
+
+    public void setExternalText(String text) {
+        externalText = text;
+        if (statusView != null) {
+            statusView.setExternalText(text);
+        }
+    }
+
+    public void setWifiState(WiFiState newState) {
+        wifiState = newState;
+        if (statusView != null) {
+            updateWifiStatus();
+        }
+    }
+
+    public void setGnssState(GnssState newState) {
+        gnssState = newState;
+        if (statusView != null) {
+            updateGnssStatus();
+        }
+    }
+
+    private void updateWifiStatus() {
+        int resource = getWifiIconResource(prefs, wifiState);
+        if (resource != wifiIconResource) {
+            wifiIconResource = resource;
+            statusView.setWifiIcon(resource);
+        }
+    }
+
+    private void updateGnssStatus() {
+        int resource = getGnssIconResource(prefs, gnssState);
+        if (resource != gnssIconResource) {
+            gnssIconResource = resource;
+            statusView.setGnssIcon(resource);
+        }
+    }
+
+    public static int getWifiIconResource(Preferences prefs, WiFiState state) {
+        return getIconResource(prefs, WIFI_ICONS_MONO, WIFI_ICONS_COLOR, WIFI_ICONS_MONOCOLOR, state.ordinal());
+    }
+
+    public static int getGnssIconResource(Preferences prefs, GnssState state) {
+        return getIconResource(prefs, GNSS_ICONS_MONO, GNSS_ICONS_COLOR, GNSS_ICONS_MONOCOLOR, state.ordinal());
+    }
+
+    private static int getIconResource(Preferences prefs, int[] monoResources, int[] colorResources, int[] monocolorResources, int state) {
+        return switch (prefs.iconStyle.get()) {
+            case 1 -> colorResources[state];
+            case 2 -> monocolorResources[state];
+            default -> monoResources[state];
+        };
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    private void setupGestures() {
+        gestures = new OverlayGestures(statusView.getRoot(), new OverlayGestures.Listener() {
+            @Override
+            public void onTap(int x, int y) {
+                handleTap(x, y);
+            }
+
+            @Override
+            public void onLongPress() {
+                showQuickMenu();
+            }
+
+            @Override
+            public void onDragStart() {
+                if (snapAnimator != null) {
+                    snapAnimator.cancel();
+                }
+                initialX = params.x;
+                initialY = params.y;
+            }
+
+            @Override
+            public void onDrag(int dx, int dy) {
+                params.x = initialX + dx;
+                params.y = initialY + dy;
+                PerfBudget.count(PerfBudget.WINDOW_UPDATES);
+                windowManager.updateViewLayout(statusView.getRoot(), params);
+            }
+
+            @Override
+            public void onDragEnd(float velocityX, float velocityY) {
+                if (velocityX != 0 && Math.abs(velocityX) > Math.abs(velocityY)) {
+                    snapToEdge(velocityX > 0);
+                } else {
+                    savePosition();
+                }
+            }
+        });
+        statusView.getRoot().setOnTouchListener(gestures);
+    }
+
+    private void handleTap(int x, int y) {
+        int icon = statusView.findIconAt(x, y);
+        if (icon == StatusView.ICON_WIFI) {
+            Intent intent = new Intent(Settings.ACTION_WIFI_SETTINGS);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            service.startActivity(intent);
+            return;
+        }
+        if (icon == StatusView.ICON_GNSS) {
+            Intent intent = service.getPackageManager().getLaunchIntentForPackage("dezz.gnssshare.client");
+            if (intent == null) {
+                intent = new Intent(Settings.ACTION_LOCATION_SOURCE_SETTINGS);
+            }
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            service.startActivity(intent);
+            return;
+        }
+
+        service.startMainActivity();
+    }
+
+    // Flinging the overlay sideways moves it to that edge of the display
+    private void snapToEdge(boolean toRight) {
+        int target = toRight ? context.getResources().getDisplayMetrics().widthPixels - statusView.getRoot().getWidth() : 0;
+        if (snapAnimator == null) {
+            snapAnimator = new ValueAnimator();
+            snapAnimator.setDuration(SNAP_DURATION);
+            snapAnimator.setInterpolator(new DecelerateInterpolator());
+            snapAnimator.addUpdateListener(animator -> {
+                if (statusView != null) {
+                    params.x = (int) animator.getAnimatedValue();
+                    PerfBudget.count(PerfBudget.WINDOW_UPDATES);
+                    windowManager.updateViewLayout(statusView.getRoot(), params);
+                }
+            });
+            snapAnimator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    savePosition();
+                }
+            });
+        }
+        snapAnimator.setIntValues(params.x, Math.max(0, target));
+        snapAnimator.start();
+    }
+
+    private void showQuickMenu() {
+        PopupMenu menu = new PopupMenu(context, statusView.getRoot());
+        menu.getMenu().add(Menu.NONE, MENU_SETTINGS, Menu.NONE, R.string.overlay_menu_settings);
+        List<String> profileNames = new Profiles(service).getNames();
+        if (!profileNames.isEmpty()) {
+            SubMenu profilesMenu = menu.getMenu().addSubMenu(Menu.NONE, Menu.NONE, Menu.NONE, R.string.overlay_menu_profiles);
+            for (String name : profileNames) {
+                profilesMenu.add(MENU_PROFILES_GROUP, Menu.NONE, Menu.NONE, name);
+            }
+        }
+        menu.getMenu().add(Menu.NONE, MENU_STOP, Menu.NONE, R.string.overlay_menu_stop);
+        menu.setOnMenuItemClickListener(item -> {
+            if (item.getGroupId() == MENU_PROFILES_GROUP) {
+                int changedOverlays = new Profiles(service).applyChanges(item.getTitle().toString());
+                if (changedOverlays == Profiles.APPLY_FAILED) {
+                    Toast.makeText(service, R.string.profile_apply_failed, Toast.LENGTH_SHORT).show();
+                } else if (changedOverlays != 0) {
+                    SettingsBus.postOverlaysChanged(changedOverlays);
+                }
+                return true;
+            }
+            switch (item.getItemId()) {
+                case MENU_SETTINGS -> service.startMainActivity();
+                case MENU_STOP -> service.disableWidget();
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        });
+        menu.show();
+    }
+
+    private int getPixelShiftStep() {
+        if (!prefs.pixelShift.get()) {
+            return 0;
+        }
+        return (int) (System.currentTimeMillis() / PIXEL_SHIFT_INTERVAL % PIXEL_SHIFT_X.length);
+    }
+
+    // Runs on the clock tick, so shifting doesn't add wakeups of its own
+    private void updatePixelShift() {
+        if (params == null || gestures.isDragging() || (snapAnimator != null && snapAnimator.isRunning())) {
+            return;
+        }
+        int step = getPixelShiftStep();
+        int newShiftX = PIXEL_SHIFT_X[step];
+        int newShiftY = PIXEL_SHIFT_Y[step];
+        if (newShiftX == shiftX && newShiftY == shiftY) {
+            return;
+        }
+        params.x += newShiftX - shiftX;
+        params.y += newShiftY - shiftY;
+        shiftX = newShiftX;
+        shiftY = newShiftY;
+        PerfBudget.count(PerfBudget.WINDOW_UPDATES);
+        windowManager.updateViewLayout(statusView.getRoot(), params);
+    }
+
+    // Drags and flings only mark the position, it is written once the overlay has stayed put for a while
+    private void savePosition() {
+        if (params == null) {
+            return;
+        }
+        positionDirty = true;
+        statusView.getRoot().removeCallbacks(savePositionRunnable);
+        statusView.getRoot().postDelayed(savePositionRunnable, POSITION_SAVE_DELAY);
+    }
+
+    private void flushPosition() {
+        if (!positionDirty || params == null) {
+            return;
+        }
+        positionDirty = false;
+        // The stored position never includes the pixel shift
+        int x = params.x - shiftX;
+        int y = params.y - shiftY;
+        prefs.batch(() -> {
+            prefs.overlayX.set(x);
+            prefs.overlayY.set(y);
+        });
+    }
+}
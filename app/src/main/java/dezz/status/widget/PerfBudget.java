@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Counts the work the widget does in the background and checks it against per-minute budgets.
+ * A minute that goes over a budget is logged and counted, so a regression shows up in the
+ * diagnostics instead of only as a warmer head unit. The counters are only touched on the main
+ * thread.
+ */
+public final class PerfBudget {
+    private static final String TAG = "PerfBudget";
+
+    public static final int TEXT_UPDATES = 0;
+    public static final int ICON_UPDATES = 1;
+    public static final int WINDOW_UPDATES = 2;
+    public static final int PREFERENCE_WRITES = 3;
+
+    private static final String[] NAMES = {
+            "text updates", "icon updates", "window updates", "preference writes"
+    };
+    // A clock with seconds, 1 Hz location updates and a flapping network still fit into these.
+    // Dragging an overlay goes over the window budget, outside of a drag that is a regression.
+    private static final int[] BUDGETS_PER_MINUTE = {130, 12, 4, 8};
+    private static final long WINDOW = 60 * 1000;
+
+    private static final int[] windowCounts = new int[NAMES.length];
+    private static final int[] totals = new int[NAMES.length];
+    private static final int[] overruns = new int[NAMES.length];
+    private static long windowStart = 0;
+
+    private PerfBudget() {
+    }
+
+    public static void start() {
+        Arrays.fill(windowCounts, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(overruns, 0);
+        windowStart = SystemClock.uptimeMillis();
+    }
+
+    public static void stop() {
+        checkWindow(SystemClock.uptimeMillis());
+    }
+
+    public static void count(int counter) {
+        checkWindow(SystemClock.uptimeMillis());
+        windowCounts[counter]++;
+        totals[counter]++;
+    }
+
+    public static int getBudget(int counter) {
+        return BUDGETS_PER_MINUTE[counter];
+    }
+
+    public static int getTotal(int counter) {
+        return totals[counter];
+    }
+
+    /**
+     * Returns the number of minutes in which the counter went over its budget.
+     */
+    public static int getOverruns(int counter) {
+        return overruns[counter];
+    }
+
+    private static void checkWindow(long now) {
+        if (windowStart == 0 || now - windowStart < WINDOW) {
+            return;
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            if (windowCounts[i] > BUDGETS_PER_MINUTE[i]) {
+                overruns[i]++;
+                Log.w(TAG, "Over budget: " + windowCounts[i] + " " + NAMES[i] + " in a minute, the budget is " + BUDGETS_PER_MINUTE[i]);
+            }
+        }
+        Arrays.fill(windowCounts, 0);
+        windowStart = now;
+    }
+}
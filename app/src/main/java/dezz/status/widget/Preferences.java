@@ -19,20 +19,33 @@ package dezz.status.widget;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.view.Display;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class Preferences {
     public static abstract class Preference {
         final Preferences preferences;
-        final String key;
+        final String name;
+        String key;
 
-        public Preference(Preferences preferences, String key) {
+        public Preference(Preferences preferences, String name) {
             this.preferences = preferences;
-            this.key = key;
+            this.name = name;
+            this.key = name;
+            preferences.all.add(this);
         }
 
         public void reset() {
-            preferences.prefs.edit().remove(key).apply();
+            preferences.save(preferences.edit().remove(key));
         }
+
+        abstract Object getValue();
+
+        // Values of another type (e.g. from a newer profile format) are ignored
+        abstract void putValue(SharedPreferences.Editor editor, Object value);
     }
 
     public static final class Bool extends Preference {
@@ -48,7 +61,19 @@ public class Preferences {
         }
 
         public void set(boolean value) {
-            preferences.prefs.edit().putBoolean(key, value).apply();
+            preferences.save(preferences.edit().putBoolean(key, value));
+        }
+
+        @Override
+        Object getValue() {
+            return get();
+        }
+
+        @Override
+        void putValue(SharedPreferences.Editor editor, Object value) {
+            if (value instanceof Boolean booleanValue) {
+                editor.putBoolean(key, booleanValue);
+            }
         }
     }
 
@@ -65,22 +90,122 @@ public class Preferences {
         }
 
         public void set(int value) {
-            preferences.prefs.edit().putInt(key, value).apply();
+            preferences.save(preferences.edit().putInt(key, value));
+        }
+
+        @Override
+        Object getValue() {
+            return get();
+        }
+
+        @Override
+        void putValue(SharedPreferences.Editor editor, Object value) {
+            if (value instanceof Integer intValue) {
+                editor.putInt(key, intValue);
+            }
         }
     }
 
+    public static final class LongPref extends Preference {
+        private final long defaultValue;
+
+        public LongPref(Preferences preferences, String key, long defaultValue) {
+            super(preferences, key);
+            this.defaultValue = defaultValue;
+        }
+
+        public long get() {
+            return preferences.prefs.getLong(key, defaultValue);
+        }
+
+        public void set(long value) {
+            preferences.save(preferences.edit().putLong(key, value));
+        }
+
+        @Override
+        Object getValue() {
+            return get();
+        }
+
+        @Override
+        void putValue(SharedPreferences.Editor editor, Object value) {
+            if (value instanceof Long longValue) {
+                editor.putLong(key, longValue);
+            }
+        }
+    }
+
+    public static final class Str extends Preference {
+        private final String defaultValue;
+
+        public Str(Preferences preferences, String key, String defaultValue) {
+            super(preferences, key);
+            this.defaultValue = defaultValue;
+        }
+
+        public String get() {
+            return preferences.prefs.getString(key, defaultValue);
+        }
+
+        public void set(String value) {
+            preferences.save(preferences.edit().putString(key, value));
+        }
+
+        @Override
+        Object getValue() {
+            return get();
+        }
+
+        @Override
+        void putValue(SharedPreferences.Editor editor, Object value) {
+            if (value instanceof String stringValue) {
+                editor.putString(key, stringValue);
+            }
+        }
+    }
+
+    public static final int MAX_OVERLAYS = 4;
+
+    public static final int RENDER_MODE_VIEWS = 0;
+    public static final int RENDER_MODE_SINGLE_VIEW = 1;
+    public static final int RENDER_MODE_LAYERED = 2;
+    public static final int RENDER_MODE_GLYPH_ATLAS = 3;
+
     private final SharedPreferences prefs;
+    private SharedPreferences.Editor batchEditor = null;
+    private final List<Preference> all = new ArrayList<>();
 
+    // Global settings, they are only meaningful in the default namespace
     public final Bool widgetEnabled = new Bool(this, "enabled", false);
+    public final Int overlayCount = new Int(this, "overlayCount", 1);
+    public final Int lastGnssState = new Int(this, "lastGnssState", 0);
+    public final LongPref lastGnssStateTime = new LongPref(this, "lastGnssStateTime", 0);
+    public final Int lastWifiState = new Int(this, "lastWifiState", 0);
+    public final LongPref lastWifiStateTime = new LongPref(this, "lastWifiStateTime", 0);
+    public final Str activeProfile = new Str(this, "activeProfile", "");
+    public final Int autoProfileMode = new Int(this, "autoProfileMode", 0);
+    public final Str dayProfile = new Str(this, "dayProfile", "");
+    public final Str nightProfile = new Str(this, "nightProfile", "");
+    public final Int nightStartMinutes = new Int(this, "nightStartMinutes", 21 * 60);
+    public final Int dayStartMinutes = new Int(this, "dayStartMinutes", 7 * 60);
+    public final Int gnssSmoothingPercent = new Int(this, "gnssSmoothingPercent", 30);
+    public final Int gnssGoodEnterAccuracy = new Int(this, "gnssGoodEnterAccuracy", 15);
+    public final Int gnssGoodExitAccuracy = new Int(this, "gnssGoodExitAccuracy", 25);
+    public final Int gnssMinDwellSeconds = new Int(this, "gnssMinDwellSeconds", 5);
+    public final Bool notificationMirror = new Bool(this, "notificationMirror", false);
+
+    // Per-overlay settings
     public final Int iconStyle = new Int(this, "iconStyle", 0);
     public final Bool showDate = new Bool(this, "showDate", false);
     public final Bool showTime = new Bool(this, "showTime", false);
+    public final Bool showSeconds = new Bool(this, "showSeconds", false);
     public final Bool showDayOfTheWeek = new Bool(this, "showDayOfTheWeek", false);
     public final Int calendarAlignment = new Int(this, "calendarAlignment", 0);
     public final Bool showWifiIcon = new Bool(this, "showWifiIcon", true);
     public final Bool showGnssIcon = new Bool(this, "showGnssIcon", true);
     public final Bool showFullDayAndMonth = new Bool(this, "showFullDayAndMonth", false);
     public final Bool oneLineLayout = new Bool(this, "oneLineLayout", false);
+    public final Bool pixelShift = new Bool(this, "pixelShift", false);
     public final Int iconSize = new Int(this, "iconSize", 70);
     public final Int timeFontSize = new Int(this, "timeFontSize", 60);
     public final Int dateFontSize = new Int(this, "dateFontSize", 20);
@@ -91,9 +216,82 @@ public class Preferences {
     public final Int adjustDateY = new Int(this, "adjustDateY", 0);
     public final Int overlayX = new Int(this, "overlayX", 200);
     public final Int overlayY = new Int(this, "overlayY", 300);
+    public final Int displayId = new Int(this, "displayId", Display.DEFAULT_DISPLAY);
+    public final Int renderMode = new Int(this, "renderMode", RENDER_MODE_VIEWS);
+
+    private final List<Preference> global = List.of(widgetEnabled, overlayCount, lastGnssState, lastGnssStateTime,
+            lastWifiState, lastWifiStateTime, activeProfile, autoProfileMode, dayProfile, nightProfile,
+            nightStartMinutes, dayStartMinutes, gnssSmoothingPercent, gnssGoodEnterAccuracy, gnssGoodExitAccuracy,
+            gnssMinDwellSeconds, notificationMirror);
+    private final List<Preference> layout = List.of(overlayX, overlayY, displayId);
 
     public Preferences(Context context) {
-        final Context deviceContext = context.getApplicationContext().createDeviceProtectedStorageContext();
-        prefs = deviceContext.getSharedPreferences(context.getPackageName() + "_preferences", Context.MODE_PRIVATE);
+        this(context, 0);
+    }
+
+    // The first overlay uses the default namespace, so settings from older versions stay in effect
+    public Preferences(Context context, int overlayIndex) {
+        prefs = BinaryPreferenceStore.get(context, getStoreName(context));
+
+        if (overlayIndex > 0) {
+            String prefix = "overlay" + overlayIndex + ".";
+            for (Preference preference : all) {
+                preference.key = prefix + preference.name;
+            }
+        }
+    }
+
+    static String getStoreName(Context context) {
+        return context.getPackageName() + "_preferences";
+    }
+
+    // The look of an overlay, this is what a profile consists of
+    List<Preference> getStylePreferences() {
+        List<Preference> style = new ArrayList<>(all);
+        style.removeAll(global);
+        style.removeAll(layout);
+        return style;
+    }
+
+    // Where an overlay is shown, it belongs to the unit rather than to a profile
+    List<Preference> getLayoutPreferences() {
+        return layout;
+    }
+
+    // All namespaces live in the same file, so one editor can change several overlays at once
+    void editAll(Consumer<SharedPreferences.Editor> changes) {
+        SharedPreferences.Editor editor = prefs.edit();
+        changes.accept(editor);
+        PerfBudget.count(PerfBudget.PREFERENCE_WRITES);
+        editor.apply();
+    }
+
+    // Collects all changes made by the runnable into a single editor that is applied once at the end
+    public void batch(Runnable changes) {
+        if (batchEditor != null) {
+            changes.run();
+            return;
+        }
+
+        batchEditor = prefs.edit();
+        try {
+            changes.run();
+        } finally {
+            SharedPreferences.Editor editor = batchEditor;
+            batchEditor = null;
+            PerfBudget.count(PerfBudget.PREFERENCE_WRITES);
+            editor.apply();
+        }
+    }
+
+    private SharedPreferences.Editor edit() {
+        return batchEditor != null ? batchEditor : prefs.edit();
+    }
+
+    private void save(SharedPreferences.Editor editor) {
+        if (editor != batchEditor) {
+            PerfBudget.count(PerfBudget.PREFERENCE_WRITES);
+            editor.apply();
+        }
     }
-}
+}
\ No newline at end of file
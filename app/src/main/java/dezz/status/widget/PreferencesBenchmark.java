@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares loading and committing the current settings as XML preferences and as a
+ * {@link BinaryPreferenceStore}, using scratch copies so the real files are not touched.
+ */
+public final class PreferencesBenchmark {
+    private static final String TAG = "PreferencesBenchmark";
+    private static final String SCRATCH_NAME = "benchmark_preferences";
+    private static final String CHANGED_KEY = "benchmark.counter";
+    private static final int ITERATIONS = 20;
+
+    private PreferencesBenchmark() {
+    }
+
+    public static String run(Context context) {
+        Context deviceContext = context.getApplicationContext().createDeviceProtectedStorageContext();
+        Map<String, Object> values = new HashMap<>(BinaryPreferenceStore.get(context, Preferences.getStoreName(context)).getAll());
+
+        SharedPreferences xml = deviceContext.getSharedPreferences(SCRATCH_NAME, Context.MODE_PRIVATE);
+        File xmlFile = new File(deviceContext.getDataDir(), "shared_prefs/" + SCRATCH_NAME + ".xml");
+        File binaryFile = BinaryPreferenceStore.getFile(deviceContext, SCRATCH_NAME);
+        try {
+            SharedPreferences.Editor editor = xml.edit().clear();
+            putAll(editor, values);
+            editor.commit();
+            BinaryPreferenceStore.write(binaryFile, values);
+
+            long xmlLoadNanos = 0;
+            long binaryLoadNanos = 0;
+            long xmlCommitNanos = 0;
+            long binaryCommitNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                // The system keeps XML preferences loaded once read, so the file is parsed here the way it does it
+                long start = System.nanoTime();
+                parseXml(xmlFile);
+                xmlLoadNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                BinaryPreferenceStore.read(binaryFile);
+                binaryLoadNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                xml.edit().putInt(CHANGED_KEY, i).commit();
+                xmlCommitNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                values.put(CHANGED_KEY, i);
+                BinaryPreferenceStore.write(binaryFile, values);
+                binaryCommitNanos += System.nanoTime() - start;
+            }
+
+            return context.getString(R.string.preferences_benchmark_result_format,
+                    xmlLoadNanos / ITERATIONS / 1e6F, xmlCommitNanos / ITERATIONS / 1e6F,
+                    binaryLoadNanos / ITERATIONS / 1e6F, binaryCommitNanos / ITERATIONS / 1e6F);
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(TAG, "Benchmark failed", e);
+            return context.getString(R.string.preferences_benchmark_failed);
+        } finally {
+            deviceContext.deleteSharedPreferences(SCRATCH_NAME);
+            if (binaryFile.exists() && !binaryFile.delete()) {
+                Log.w(TAG, "Failed to delete " + binaryFile);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putAll(SharedPreferences.Editor editor, Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Boolean booleanValue) {
+                editor.putBoolean(entry.getKey(), booleanValue);
+            } else if (value instanceof Integer intValue) {
+                editor.putInt(entry.getKey(), intValue);
+            } else if (value instanceof Long longValue) {
+                editor.putLong(entry.getKey(), longValue);
+            } else if (value instanceof Float floatValue) {
+                editor.putFloat(entry.getKey(), floatValue);
+            } else if (value instanceof String stringValue) {
+                editor.putString(entry.getKey(), stringValue);
+            } else if (value instanceof Set<?> set) {
+                editor.putStringSet(entry.getKey(), (Set<String>) set);
+            }
+        }
+    }
+
+    // Reads every entry with its value, like the system does when it loads the file
+    private static int parseXml(File file) throws IOException, XmlPullParserException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(input, StandardCharsets.UTF_8.name());
+            int entries = 0;
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG && parser.getAttributeValue(null, "name") != null) {
+                    if ("string".equals(parser.getName())) {
+                        parser.nextText();
+                    }
+                    entries++;
+                }
+            }
+            return entries;
+        }
+    }
+}
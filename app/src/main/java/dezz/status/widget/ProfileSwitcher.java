@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.Calendar;
+
+/**
+ * Switches between the day and the night profile. The rule is evaluated only on the events that
+ * can change its outcome: the next day/night boundary (one scheduled callback, no polling), a
+ * change of the system night mode and a change of the system time. A profile is applied only
+ * when the outcome changes, so a setting adjusted by hand stays until the next switch.
+ */
+final class ProfileSwitcher {
+    interface Listener {
+        void onProfileApplied(int changedOverlays);
+    }
+
+    public static final int MODE_OFF = 0;
+    public static final int MODE_BY_TIME = 1;
+    public static final int MODE_BY_NIGHT_MODE = 2;
+
+    private final Context context;
+    private final Handler handler;
+    private final Listener listener;
+    private final Preferences prefs;
+    private final Profiles profiles;
+
+    private boolean started = false;
+    private boolean timeChangeReceiverRegistered = false;
+    private String appliedProfile = null;
+
+    private final Runnable boundaryRunnable = this::evaluate;
+
+    private final BroadcastReceiver timeChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            evaluate();
+        }
+    };
+
+    ProfileSwitcher(Context context, Handler handler, Listener listener) {
+        this.context = context;
+        this.handler = handler;
+        this.listener = listener;
+        prefs = new Preferences(context);
+        profiles = new Profiles(context);
+    }
+
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        appliedProfile = prefs.activeProfile.get();
+        evaluate();
+    }
+
+    void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        handler.removeCallbacks(boundaryRunnable);
+        setTimeChangeReceiverRegistered(false);
+    }
+
+    void onConfigurationChanged(Configuration newConfig) {
+        if (started && prefs.autoProfileMode.get() == MODE_BY_NIGHT_MODE) {
+            evaluate();
+        }
+    }
+
+    /**
+     * Evaluates the rule right away, e.g. after its settings were changed or the overlays were resumed.
+     */
+    void evaluate() {
+        if (!started) {
+            return;
+        }
+        handler.removeCallbacks(boundaryRunnable);
+
+        int mode = prefs.autoProfileMode.get();
+        setTimeChangeReceiverRegistered(mode == MODE_BY_TIME);
+        if (mode == MODE_OFF) {
+            appliedProfile = null;
+            return;
+        }
+
+        boolean night;
+        if (mode == MODE_BY_TIME) {
+            Calendar now = Calendar.getInstance();
+            int minutes = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+            int nightStart = prefs.nightStartMinutes.get();
+            int dayStart = prefs.dayStartMinutes.get();
+            night = isInWindow(minutes, nightStart, dayStart);
+            scheduleBoundary(now, night ? dayStart : nightStart);
+        } else {
+            int nightMode = context.getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK;
+            night = nightMode == Configuration.UI_MODE_NIGHT_YES;
+        }
+
+        String profile = night ? prefs.nightProfile.get() : prefs.dayProfile.get();
+        if (profile.isEmpty() || profile.equals(appliedProfile)) {
+            return;
+        }
+        appliedProfile = profile;
+        int changedOverlays = profiles.applyChanges(profile);
+        if (changedOverlays > 0) {
+            listener.onProfileApplied(changedOverlays);
+        }
+    }
+
+    private void scheduleBoundary(Calendar now, int boundaryMinutes) {
+        Calendar boundary = (Calendar) now.clone();
+        boundary.set(Calendar.HOUR_OF_DAY, boundaryMinutes / 60);
+        boundary.set(Calendar.MINUTE, boundaryMinutes % 60);
+        boundary.set(Calendar.SECOND, 0);
+        boundary.set(Calendar.MILLISECOND, 0);
+        if (!boundary.after(now)) {
+            boundary.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        long delay = boundary.getTimeInMillis() - now.getTimeInMillis();
+        handler.postAtTime(boundaryRunnable, SystemClock.uptimeMillis() + delay);
+    }
+
+    private void setTimeChangeReceiverRegistered(boolean registered) {
+        if (registered == timeChangeReceiverRegistered) {
+            return;
+        }
+        if (registered) {
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            context.registerReceiver(timeChangeReceiver, filter);
+        } else {
+            context.unregisterReceiver(timeChangeReceiver);
+        }
+        timeChangeReceiverRegistered = registered;
+    }
+
+    // The window may wrap around midnight, an empty window never matches
+    private static boolean isInWindow(int minutes, int start, int end) {
+        if (start <= end) {
+            return minutes >= start && minutes < end;
+        }
+        return minutes >= start || minutes < end;
+    }
+}
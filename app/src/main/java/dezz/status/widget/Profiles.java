@@ -0,0 +1,353 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named profiles with the look of all overlays. A profile is kept as a single compact Base64
+ * blob and is applied with one preference commit, so the service sees the whole change in one
+ * {@link WidgetService#applyPreferences()} pass. The profiles and the current settings can be
+ * exported to a file and imported on another unit.
+ */
+public final class Profiles {
+    private static final String TAG = "Profiles";
+
+    public static final int APPLY_FAILED = -1;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_IMPORT_SIZE = 1024 * 1024;
+    private static final int GLOBAL_SECTION = -1;
+
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_STRING = 'S';
+
+    private final Context context;
+    private final SharedPreferences store;
+
+    public Profiles(Context context) {
+        this.context = context;
+        final Context deviceContext = context.getApplicationContext().createDeviceProtectedStorageContext();
+        store = deviceContext.getSharedPreferences(context.getPackageName() + "_profiles", Context.MODE_PRIVATE);
+    }
+
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(store.getAll().keySet());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    public void save(String name) {
+        store.edit().putString(name, serialize(false)).apply();
+        new Preferences(context).activeProfile.set(name);
+    }
+
+    public void delete(String name) {
+        store.edit().remove(name).apply();
+        Preferences prefs = new Preferences(context);
+        if (name.equals(prefs.activeProfile.get())) {
+            prefs.activeProfile.reset();
+        }
+    }
+
+    /**
+     * Applies the profile to all overlays it has settings for. Returns false if there is no such
+     * profile or it can't be read.
+     */
+    public boolean apply(String name) {
+        return applyChanges(name) != APPLY_FAILED;
+    }
+
+    /**
+     * Applies the profile and returns the mask of overlays (bit N for overlay N) whose settings
+     * have actually changed, or {@link #APPLY_FAILED}. Only changed values are written.
+     */
+    public int applyChanges(String name) {
+        String blob = store.getString(name, null);
+        if (blob == null) {
+            return APPLY_FAILED;
+        }
+        try {
+            return deserialize(blob, false, name);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to apply profile " + name, e);
+            return APPLY_FAILED;
+        }
+    }
+
+    /**
+     * Writes the current settings, including where the overlays are, and all profiles as JSON.
+     */
+    public void exportTo(OutputStream output) throws IOException {
+        try {
+            JSONObject profiles = new JSONObject();
+            for (String name : getNames()) {
+                profiles.put(name, store.getString(name, ""));
+            }
+            JSONObject root = new JSONObject();
+            root.put("version", FORMAT_VERSION);
+            root.put("settings", serialize(true));
+            root.put("activeProfile", new Preferences(context).activeProfile.get());
+            root.put("profiles", profiles);
+            output.write(root.toString(2).getBytes(StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads and checks an exported file without changing anything, so it can be done off the main
+     * thread. The result is applied with {@link #applyImport(ImportedSettings)}.
+     */
+    public ImportedSettings readImport(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+            // An exported file is a few kilobytes, anything this large is not one of ours
+            if (bytes.size() > MAX_IMPORT_SIZE) {
+                throw new IOException("Settings file is too large");
+            }
+        }
+
+        try {
+            JSONObject root = new JSONObject(bytes.toString(StandardCharsets.UTF_8.name()));
+            if (root.getInt("version") > FORMAT_VERSION) {
+                throw new IOException("Unsupported settings file version");
+            }
+            // Check everything before changing anything, a broken file must not leave half of the settings behind
+            JSONObject profiles = root.getJSONObject("profiles");
+            Map<String, String> blobs = new HashMap<>();
+            for (Iterator<String> names = profiles.keys(); names.hasNext(); ) {
+                String name = names.next();
+                String blob = profiles.getString(name);
+                read(blob, false);
+                blobs.put(name, blob);
+            }
+            String settings = root.getString("settings");
+            read(settings, true);
+
+            return new ImportedSettings(blobs, settings, root.optString("activeProfile", ""));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Replaces the profiles and the current settings with the ones read from an exported file.
+     */
+    public void applyImport(ImportedSettings imported) throws IOException {
+        SharedPreferences.Editor editor = store.edit().clear();
+        for (Map.Entry<String, String> profile : imported.profiles.entrySet()) {
+            editor.putString(profile.getKey(), profile.getValue());
+        }
+        editor.apply();
+        deserialize(imported.settings, true, imported.activeProfile);
+    }
+
+    private String serialize(boolean withLayout) {
+        Preferences root = new Preferences(context);
+        int overlayCount = Math.max(1, Math.min(Preferences.MAX_OVERLAYS, root.overlayCount.get()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(overlayCount + (withLayout ? 1 : 0));
+            if (withLayout) {
+                writeSection(out, GLOBAL_SECTION, getSectionPreferences(root, GLOBAL_SECTION, true));
+            }
+            for (int i = 0; i < overlayCount; i++) {
+                Preferences overlayPrefs = i == 0 ? root : new Preferences(context, i);
+                writeSection(out, i, getSectionPreferences(overlayPrefs, i, withLayout));
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return Base64.encodeToString(bytes.toByteArray(), Base64.NO_WRAP);
+    }
+
+    // Reads the whole blob first and then writes all values with a single editor
+    private int deserialize(String blob, boolean withLayout, String profileName) throws IOException {
+        List<Entry> changedEntries = new ArrayList<>();
+        int changedOverlays = 0;
+        for (Entry entry : read(blob, withLayout)) {
+            if (!entry.value.equals(entry.preference.getValue())) {
+                changedEntries.add(entry);
+                // A global setting such as the overlay count affects all of them
+                changedOverlays |= entry.overlayIndex == GLOBAL_SECTION ? ~0 : 1 << entry.overlayIndex;
+            }
+        }
+
+        Preferences root = new Preferences(context);
+        root.editAll(editor -> {
+            for (Entry entry : changedEntries) {
+                entry.preference.putValue(editor, entry.value);
+            }
+            root.activeProfile.putValue(editor, profileName);
+        });
+        return changedOverlays & ((1 << Preferences.MAX_OVERLAYS) - 1);
+    }
+
+    // Only what serialize() writes for the section is accepted, so a profile can't move an overlay
+    // or change a global setting
+    private List<Entry> read(String blob, boolean withLayout) throws IOException {
+        byte[] data;
+        try {
+            data = Base64.decode(blob, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Unsupported profile version");
+            }
+            int sectionCount = in.readByte();
+            for (int section = 0; section < sectionCount; section++) {
+                int overlayIndex = in.readByte();
+                if (overlayIndex >= Preferences.MAX_OVERLAYS || overlayIndex < GLOBAL_SECTION) {
+                    throw new IOException("Unknown profile section " + overlayIndex);
+                }
+                Preferences prefs = new Preferences(context, Math.max(0, overlayIndex));
+                List<Preferences.Preference> allowed = getSectionPreferences(prefs, overlayIndex, withLayout);
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    Object value = readValue(in);
+                    // Settings unknown to this version or not allowed in this section are skipped
+                    Preferences.Preference preference = find(allowed, name);
+                    if (preference != null) {
+                        entries.add(new Entry(overlayIndex, preference, value));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static List<Preferences.Preference> getSectionPreferences(Preferences prefs, int section, boolean withLayout) {
+        if (section == GLOBAL_SECTION) {
+            return withLayout ? List.of(prefs.overlayCount) : List.of();
+        }
+        List<Preferences.Preference> preferences = prefs.getStylePreferences();
+        if (withLayout) {
+            preferences.addAll(prefs.getLayoutPreferences());
+        }
+        return preferences;
+    }
+
+    @Nullable
+    private static Preferences.Preference find(List<Preferences.Preference> preferences, String name) {
+        for (Preferences.Preference preference : preferences) {
+            if (preference.name.equals(name)) {
+                return preference;
+            }
+        }
+        return null;
+    }
+
+    private static void writeSection(DataOutputStream out, int section, List<Preferences.Preference> preferences) throws IOException {
+        out.writeByte(section);
+        out.writeShort(preferences.size());
+        for (Preferences.Preference preference : preferences) {
+            out.writeUTF(preference.name);
+            writeValue(out, preference.getValue());
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Boolean booleanValue) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else if (value instanceof Integer intValue) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(intValue);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(longValue);
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case TYPE_BOOLEAN -> in.readBoolean();
+            case TYPE_INT -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_STRING -> in.readUTF();
+            default -> throw new IOException("Unknown value type " + type);
+        };
+    }
+
+    /**
+     * The checked contents of an exported file.
+     */
+    public static final class ImportedSettings {
+        final Map<String, String> profiles;
+        final String settings;
+        final String activeProfile;
+
+        ImportedSettings(Map<String, String> profiles, String settings, String activeProfile) {
+            this.profiles = profiles;
+            this.settings = settings;
+            this.activeProfile = activeProfile;
+        }
+    }
+
+    private static final class Entry {
+        final int overlayIndex;
+        final Preferences.Preference preference;
+        final Object value;
+
+        Entry(int overlayIndex, Preferences.Preference preference, Object value) {
+            this.overlayIndex = overlayIndex;
+            this.preference = preference;
+            this.value = value;
+        }
+    }
+}
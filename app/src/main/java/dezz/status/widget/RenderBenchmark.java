@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+/**
+ * Compares the cost of a clock tick (text update, measure and layout when requested, draw) for
+ * the standard view hierarchy, the single custom view and the glyph atlas, drawing into an
+ * off-screen bitmap.
+ */
+public final class RenderBenchmark {
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int ITERATIONS = 500;
+
+    private RenderBenchmark() {
+    }
+
+    public static String run(Context context, Preferences prefs) {
+        long viewsNanos = measure(OverlayWindow.createStatusView(context, Preferences.RENDER_MODE_VIEWS), prefs);
+        long singleViewNanos = measure(OverlayWindow.createStatusView(context, Preferences.RENDER_MODE_SINGLE_VIEW), prefs);
+        long glyphAtlasNanos = measure(OverlayWindow.createStatusView(context, Preferences.RENDER_MODE_GLYPH_ATLAS), prefs);
+
+        return context.getString(R.string.render_benchmark_result_format, viewsNanos / 1000F, singleViewNanos / 1000F, glyphAtlasNanos / 1000F);
+    }
+
+    // Returns the average time of one tick in nanoseconds
+    private static long measure(StatusView statusView, Preferences prefs) {
+        statusView.applyPreferences(prefs);
+        statusView.setTimeText("12:34");
+        statusView.setDateText(" Wed, 30 September ");
+        statusView.setWifiIcon(R.drawable.ic_mono_wifi_internet);
+        statusView.setGnssIcon(R.drawable.ic_mono_gps_good);
+
+        View root = statusView.getRoot();
+        layout(root);
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, root.getWidth()), Math.max(1, root.getHeight()), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            tick(statusView, canvas, i);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            tick(statusView, canvas, i);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        bitmap.recycle();
+        return elapsed / ITERATIONS;
+    }
+
+    private static void tick(StatusView statusView, Canvas canvas, int iteration) {
+        statusView.setTimeText(iteration % 2 == 0 ? "12:35" : "12:34");
+        View root = statusView.getRoot();
+        if (root.isLayoutRequested()) {
+            layout(root);
+        }
+        root.draw(canvas);
+    }
+
+    private static void layout(View root) {
+        int spec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        root.measure(spec, spec);
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import java.util.Arrays;
+
+/**
+ * Counts layout and draw passes of the overlays and collects clock tick delays since the service
+ * was started. The counters are only touched on the main thread.
+ */
+public final class RenderStats {
+    private static int layoutCount = 0;
+    private static int drawCount = 0;
+
+    // Upper bounds of the tick delay buckets in milliseconds, the last bucket takes the rest
+    private static final int[] TICK_DELAY_BOUNDS = {2, 5, 10, 20, 50};
+    private static final int[] tickDelayHistogram = new int[TICK_DELAY_BOUNDS.length + 1];
+
+    private RenderStats() {
+    }
+
+    public static void reset() {
+        layoutCount = 0;
+        drawCount = 0;
+        Arrays.fill(tickDelayHistogram, 0);
+    }
+
+    public static void onLayout() {
+        layoutCount++;
+    }
+
+    public static void onDraw() {
+        drawCount++;
+    }
+
+    /**
+     * Records how late a clock tick was drawn after the second or minute boundary it is for.
+     */
+    public static void onClockTick(long delayMillis) {
+        int bucket = 0;
+        while (bucket < TICK_DELAY_BOUNDS.length && delayMillis > TICK_DELAY_BOUNDS[bucket]) {
+            bucket++;
+        }
+        tickDelayHistogram[bucket]++;
+    }
+
+    public static int getLayoutCount() {
+        return layoutCount;
+    }
+
+    public static int getDrawCount() {
+        return drawCount;
+    }
+
+    public static int[] getTickDelayHistogram() {
+        return tickDelayHistogram.clone();
+    }
+}
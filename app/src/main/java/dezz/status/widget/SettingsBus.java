@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Delivers settings changes from the settings screen to the service. The settings themselves are
+ * stored in {@link Preferences}, so the bus only has to tell which overlays are out of date:
+ * changes are merged until the next frame and the listener gets at most one call per frame with
+ * all of them. Only used on the main thread.
+ */
+public final class SettingsBus {
+    public interface Listener {
+        void onSettingsChanged(int overlayMask, int serviceChanges);
+    }
+
+    public static final int ALL_OVERLAYS = (1 << Preferences.MAX_OVERLAYS) - 1;
+
+    // Service settings that changed, as bits of serviceChanges
+    public static final int PROFILE_RULES = 1;
+    public static final int GNSS_FILTER = 1 << 1;
+    public static final int NOTIFICATION = 1 << 2;
+
+    private static Listener listener = null;
+    private static int pendingOverlays = 0;
+    private static int pendingServiceChanges = 0;
+    private static boolean frameScheduled = false;
+
+    private static final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled = false;
+        int overlayMask = pendingOverlays;
+        int serviceChanges = pendingServiceChanges;
+        pendingOverlays = 0;
+        pendingServiceChanges = 0;
+        if (listener != null) {
+            listener.onSettingsChanged(overlayMask, serviceChanges);
+        }
+    };
+
+    private SettingsBus() {
+    }
+
+    // Changes posted while nobody listens are dropped, the service reads all settings when it starts
+    public static void setListener(@Nullable Listener newListener) {
+        listener = newListener;
+        if (listener == null) {
+            pendingOverlays = 0;
+            pendingServiceChanges = 0;
+        }
+    }
+
+    public static void postOverlaysChanged(int overlayMask) {
+        pendingOverlays |= overlayMask;
+        schedule();
+    }
+
+    public static void postProfileRulesChanged() {
+        postServiceChanged(PROFILE_RULES);
+    }
+
+    public static void postGnssFilterChanged() {
+        postServiceChanged(GNSS_FILTER);
+    }
+
+    public static void postNotificationChanged() {
+        postServiceChanged(NOTIFICATION);
+    }
+
+    private static void postServiceChanged(int change) {
+        pendingServiceChanges |= change;
+        schedule();
+    }
+
+    private static void schedule() {
+        if (listener == null || frameScheduled) {
+            return;
+        }
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    private static long bootReceivedAt = 0;
+    private static long serviceCreatedAt = 0;
+    private static long firstFrameAt = 0;
+
+    private StartupTrace() {
+    }
+
+    public static void onBootReceived() {
+        bootReceivedAt = SystemClock.elapsedRealtime();
+    }
+
+    public static void onServiceCreated() {
+        serviceCreatedAt = SystemClock.elapsedRealtime();
+        firstFrameAt = 0;
+    }
+
+    public static void onFirstFrame() {
+        if (firstFrameAt != 0) {
+            return;
+        }
+        firstFrameAt = SystemClock.elapsedRealtime();
+
+        Log.i(TAG, "First overlay frame: " + getBootToFirstFrameMillis() + " ms since boot, "
+                + getServiceToFirstFrameMillis() + " ms since service creation"
+                + (bootReceivedAt != 0 ? ", " + getReceiverToFirstFrameMillis() + " ms since boot broadcast" : ""));
+    }
+
+    // elapsedRealtime() counts from the kernel boot, so the first frame timestamp is the boot-to-first-frame time itself
+    public static long getBootToFirstFrameMillis() {
+        return firstFrameAt;
+    }
+
+    public static long getServiceToFirstFrameMillis() {
+        return firstFrameAt != 0 ? firstFrameAt - serviceCreatedAt : -1;
+    }
+
+    public static long getReceiverToFirstFrameMillis() {
+        return firstFrameAt != 0 && bootReceivedAt != 0 ? firstFrameAt - bootReceivedAt : -1;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Messenger API that lets companion apps push a text and indicator states into the overlays.
+ * <p>
+ * A client binds to {@link WidgetService} with the {@link #ACTION_BIND} action and needs the
+ * signature-level {@code dezz.status.widget.permission.PUSH_STATUS} permission. It should bind
+ * without {@code BIND_AUTO_CREATE}, so it never starts the widget by itself. Everything a client
+ * has pushed is dropped when the last client unbinds.
+ * <p>
+ * Messages only store the latest values. They are applied once per frame, and every sending app
+ * is limited to {@link #MAX_MESSAGES_PER_SECOND} messages, the rest are dropped.
+ */
+final class StatusApi {
+    private static final String TAG = "StatusApi";
+
+    public static final String ACTION_BIND = "dezz.status.widget.action.BIND_STATUS_API";
+
+    /** Sets the text shown after the date, {@link #KEY_TEXT} in the data bundle. A missing or empty text removes it. */
+    public static final int MSG_SET_TEXT = 1;
+    /** Overrides the GNSS indicator, arg1 is 0 (off), 1 (bad) or 2 (good), -1 returns to the own state. */
+    public static final int MSG_SET_GNSS_STATE = 2;
+    /** Overrides the Wi-Fi indicator, arg1 is 0 (off), 1 (no internet) or 2 (internet), -1 returns to the own state. */
+    public static final int MSG_SET_WIFI_STATE = 3;
+
+    public static final String KEY_TEXT = "text";
+    public static final int STATE_OWN = -1;
+
+    private static final int MAX_MESSAGES_PER_SECOND = 20;
+    private static final int MAX_TEXT_LENGTH = 64;
+
+    interface Listener {
+        void onExternalStateChanged(String text, int gnssState, int wifiState);
+    }
+
+    private final Listener listener;
+    private final Messenger messenger;
+
+    private String text = "";
+    private int gnssState = STATE_OWN;
+    private int wifiState = STATE_OWN;
+    private boolean frameScheduled = false;
+
+    // Start of the current one second window and the number of messages in it, per sending app
+    private final SparseLongArray windowStarts = new SparseLongArray();
+    private final SparseIntArray windowCounts = new SparseIntArray();
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled = false;
+        listener.onExternalStateChanged(text, gnssState, wifiState);
+    };
+
+    StatusApi(Listener listener) {
+        this.listener = listener;
+        messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+    }
+
+    IBinder getBinder() {
+        return messenger.getBinder();
+    }
+
+    /**
+     * Drops everything the clients have pushed.
+     */
+    void reset() {
+        windowStarts.clear();
+        windowCounts.clear();
+        update("", STATE_OWN, STATE_OWN);
+    }
+
+    void stop() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            frameScheduled = false;
+        }
+    }
+
+    private boolean handleMessage(Message msg) {
+        if (!acquire(msg.sendingUid)) {
+            return true;
+        }
+
+        switch (msg.what) {
+            case MSG_SET_TEXT -> {
+                String newText = msg.peekData() != null ? msg.peekData().getString(KEY_TEXT) : null;
+                update(truncate(newText), gnssState, wifiState);
+            }
+            case MSG_SET_GNSS_STATE -> update(text, toState(msg.arg1, WidgetService.GnssState.values().length), wifiState);
+            case MSG_SET_WIFI_STATE -> update(text, gnssState, toState(msg.arg1, WidgetService.WiFiState.values().length));
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void update(String newText, int newGnssState, int newWifiState) {
+        if (newText.equals(text) && newGnssState == gnssState && newWifiState == wifiState) {
+            return;
+        }
+        text = newText;
+        gnssState = newGnssState;
+        wifiState = newWifiState;
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    private boolean acquire(int uid) {
+        long now = SystemClock.uptimeMillis();
+        if (windowStarts.indexOfKey(uid) < 0 || now - windowStarts.get(uid) >= 1000) {
+            windowStarts.put(uid, now);
+            windowCounts.put(uid, 0);
+        }
+        int count = windowCounts.get(uid) + 1;
+        windowCounts.put(uid, count);
+        if (count > MAX_MESSAGES_PER_SECOND) {
+            if (count == MAX_MESSAGES_PER_SECOND + 1) {
+                Log.w(TAG, "Too many messages from uid " + uid + ", dropping them for the rest of the second");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static String truncate(@Nullable String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    private static int toState(int value, int stateCount) {
+        return value >= 0 && value < stateCount ? value : STATE_OWN;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * Keeps the text of the foreground notification up to date. A single builder is reused, and a
+ * notification is only posted when the text changes and at most once every
+ * {@link #MIN_UPDATE_INTERVAL}: a change within that time is posted when it ends, together with
+ * whatever else changed meanwhile. Only used on the main thread.
+ */
+final class StatusNotifier {
+    private static final long MIN_UPDATE_INTERVAL = 5000;
+
+    private final Handler handler;
+    private final NotificationManager manager;
+    private final NotificationCompat.Builder builder;
+    private final int notificationId;
+
+    private String postedText = null;
+    private String pendingText = null;
+    private long lastPostTime = 0;
+    private boolean postScheduled = false;
+
+    private final Runnable postRunnable = this::postPending;
+
+    StatusNotifier(Context context, Handler handler, String channelId, int notificationId) {
+        this.handler = handler;
+        this.notificationId = notificationId;
+        manager = context.getSystemService(NotificationManager.class);
+
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle(context.getString(R.string.app_name))
+                .setSmallIcon(R.drawable.ic_mono_gps_good)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false);
+    }
+
+    /**
+     * Builds the notification for {@code startForeground()}, it counts as posted.
+     */
+    Notification build(String text) {
+        cancelPending();
+        postedText = text;
+        pendingText = text;
+        lastPostTime = SystemClock.uptimeMillis();
+        return builder.setContentText(text).build();
+    }
+
+    void update(String text) {
+        pendingText = text;
+        if (text.equals(postedText)) {
+            cancelPending();
+            return;
+        }
+        if (postScheduled) {
+            return;
+        }
+        long nextPostTime = lastPostTime + MIN_UPDATE_INTERVAL;
+        if (SystemClock.uptimeMillis() >= nextPostTime) {
+            postPending();
+        } else {
+            postScheduled = true;
+            handler.postAtTime(postRunnable, nextPostTime);
+        }
+    }
+
+    void stop() {
+        cancelPending();
+    }
+
+    private void cancelPending() {
+        if (postScheduled) {
+            handler.removeCallbacks(postRunnable);
+            postScheduled = false;
+        }
+    }
+
+    private void postPending() {
+        postScheduled = false;
+        if (pendingText == null || pendingText.equals(postedText)) {
+            return;
+        }
+        postedText = pendingText;
+        lastPostTime = SystemClock.uptimeMillis();
+        if (manager != null) {
+            manager.notify(notificationId, builder.setContentText(postedText).build());
+        }
+    }
+}
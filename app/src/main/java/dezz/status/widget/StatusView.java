@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.view.View;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.Nullable;
+
+/**
+ * The content of an overlay window: either the standard view hierarchy or a single custom view.
+ */
+public interface StatusView {
+    int ICON_NONE = 0;
+    int ICON_WIFI = 1;
+    int ICON_GNSS = 2;
+
+    View getRoot();
+
+    void setWindowVisibilityListener(@Nullable OverlayLayout.WindowVisibilityListener listener);
+
+    void setFirstDrawCallback(@Nullable Runnable callback);
+
+    // Only the views of an overlay window count towards the render stats and budgets, previews don't
+    void setCountStats(boolean countStats);
+
+    void applyPreferences(Preferences prefs);
+
+    void setTimeText(String text);
+
+    void setDateText(String text);
+
+    // Text pushed by a companion app, shown after the date, an empty text hides it
+    void setExternalText(String text);
+
+    void setWifiIcon(@DrawableRes int resource);
+
+    void setGnssIcon(@DrawableRes int resource);
+
+    // Coordinates are relative to the root view
+    int findIconAt(int x, int y);
+}
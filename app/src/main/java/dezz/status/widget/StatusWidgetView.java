@@ -0,0 +1,615 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.core.content.ContextCompat;
+import androidx.core.content.res.ResourcesCompat;
+
+import java.util.Locale;
+
+/**
+ * Draws the whole overlay (background, time, date and icons) as a single view. Text is kept in
+ * cached {@link StaticLayout}s laid out in fixed-width slots (see {@link TextSlots}), so a content
+ * change only invalidates the affected region and never goes through measure and layout.
+ * <p>
+ * With the static layer enabled (Android 10+, hardware accelerated windows) the background and
+ * the icons are recorded into a separate {@link RenderNode} backed by its own GPU layer. It is
+ * rasterized once and composited as a texture, so a clock tick re-renders only the texts.
+ * <p>
+ * With the glyph atlas enabled the texts are drawn from a {@link GlyphAtlas} whenever all of
+ * their characters are in it, and the text layouts are only rebuilt when a text falls back to
+ * the regular path.
+ */
+@SuppressLint("ViewConstructor")
+public class StatusWidgetView extends View implements StatusView {
+    private final TextPaint timePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint datePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final GradientDrawable background = new GradientDrawable();
+    private final int textColor;
+    private final int widgetBackgroundColor;
+    private final int defaultOutlineColor;
+    // The same margins as in overlay_status_widget.xml
+    private final int timeMarginEnd;
+    private final int iconPadding;
+    private final RenderNode staticLayer;
+    private boolean staticLayerDirty = true;
+    private final boolean useGlyphAtlas;
+    private GlyphAtlas timeAtlas = null;
+    private GlyphAtlas dateAtlas = null;
+    private boolean atlasesDirty = true;
+    private boolean timeFromAtlas = false;
+    private boolean dateFromAtlas = false;
+
+    private OverlayLayout.WindowVisibilityListener windowVisibilityListener = null;
+    private Runnable firstDrawCallback = null;
+    private boolean countStats = false;
+
+    private boolean showTime = false;
+    private boolean showDate = false;
+    private boolean showWifiIcon = false;
+    private boolean showGnssIcon = false;
+    private int iconSize = 0;
+    private int padding = 0;
+    private int spacing = 0;
+    private int adjustTimeY = 0;
+    private int adjustDateY = 0;
+    private int outlineColor = 0;
+    private float timeOutlineWidth = 0F;
+    private float dateOutlineWidth = 0F;
+    private Layout.Alignment dateAlignment = Layout.Alignment.ALIGN_NORMAL;
+    private int timeSlotWidth = 0;
+    private int dateSlotWidth = 0;
+    private String datePattern = "";
+    private final TextWidthCache.Callback dateWidthCallback = this::onDateWidthReady;
+
+    private String timeText = "";
+    private String dateText = "";
+    private StaticLayout timeLayout;
+    private StaticLayout dateLayout;
+    private String externalText = "";
+    private StaticLayout externalLayout;
+
+    private int wifiIconResource = 0;
+    private int gnssIconResource = 0;
+    private Drawable wifiIcon = null;
+    private Drawable gnssIcon = null;
+
+    private final Rect timeBounds = new Rect();
+    private final Rect dateBounds = new Rect();
+    private final Rect externalBounds = new Rect();
+    private final Rect wifiBounds = new Rect();
+    private final Rect gnssBounds = new Rect();
+    private final Rect timeDirtyRegion = new Rect();
+    private final Rect dateDirtyRegion = new Rect();
+
+    public StatusWidgetView(@NonNull Context context, boolean useStaticLayer, boolean useGlyphAtlas) {
+        super(context);
+        this.useGlyphAtlas = useGlyphAtlas;
+
+        Typeface typeface = ResourcesCompat.getFont(context, R.font.roboto_condensed_medium);
+        timePaint.setTypeface(typeface);
+        datePaint.setTypeface(typeface);
+
+        textColor = ContextCompat.getColor(context, R.color.text_primary);
+        widgetBackgroundColor = ContextCompat.getColor(context, R.color.widget_background);
+        defaultOutlineColor = ContextCompat.getColor(context, R.color.text_outline);
+        timeMarginEnd = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 8, getResources().getDisplayMetrics());
+        iconPadding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 4, getResources().getDisplayMetrics());
+        staticLayer = useStaticLayer && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? createStaticLayer() : null;
+
+        timeLayout = buildLayout(timeText, timePaint, Layout.Alignment.ALIGN_NORMAL, 0);
+        dateLayout = buildLayout(dateText, datePaint, dateAlignment, 0);
+        externalLayout = buildLayout(externalText, datePaint, Layout.Alignment.ALIGN_NORMAL, 0);
+    }
+
+    @Override
+    public View getRoot() {
+        return this;
+    }
+
+    @Override
+    public void setWindowVisibilityListener(@Nullable OverlayLayout.WindowVisibilityListener listener) {
+        this.windowVisibilityListener = listener;
+    }
+
+    @Override
+    public void setFirstDrawCallback(@Nullable Runnable callback) {
+        this.firstDrawCallback = callback;
+    }
+
+    @Override
+    public void setCountStats(boolean countStats) {
+        this.countStats = countStats;
+    }
+
+    @Override
+    public void applyPreferences(Preferences prefs) {
+        showTime = prefs.showTime.get();
+        showDate = prefs.showDate.get() || prefs.showDayOfTheWeek.get();
+        showWifiIcon = prefs.showWifiIcon.get();
+        showGnssIcon = prefs.showGnssIcon.get();
+
+        iconSize = prefs.iconSize.get();
+        int timeFontSize = prefs.timeFontSize.get();
+        int dateFontSize = prefs.dateFontSize.get();
+        padding = Math.max(iconSize, Math.max(timeFontSize, dateFontSize)) / 2;
+        spacing = prefs.spacingBetweenTextsAndIcons.get();
+        adjustTimeY = prefs.adjustTimeY.get();
+        adjustDateY = prefs.adjustDateY.get();
+
+        timeOutlineWidth = Math.max(2F, timeFontSize / 32F);
+        dateOutlineWidth = Math.max(2F, dateFontSize / 32F);
+        outlineColor = defaultOutlineColor & 0x00FFFFFF | (prefs.textOutlineAlpha.get() << 24);
+        background.setColor(widgetBackgroundColor & 0x00FFFFFF | (prefs.backgroundAlpha.get() << 24));
+        staticLayerDirty = true;
+
+        dateAlignment = switch (prefs.calendarAlignment.get()) {
+            case 1 -> Layout.Alignment.ALIGN_CENTER;
+            case 2 -> Layout.Alignment.ALIGN_OPPOSITE;
+            default -> Layout.Alignment.ALIGN_NORMAL;
+        };
+
+        timePaint.setTextSize(timeFontSize);
+        datePaint.setTextSize(dateFontSize);
+        timeSlotWidth = TextSlots.measureTimeWidth(timePaint, ClockFormat.getTimePattern(prefs));
+        datePattern = ClockFormat.getDatePattern(prefs);
+        dateSlotWidth = TextWidthCache.getDateWidth(datePaint, datePattern, Locale.getDefault(), dateWidthCallback);
+        atlasesDirty = true;
+        timeFromAtlas = false;
+        dateFromAtlas = false;
+        timeLayout = buildLayout(timeText, timePaint, Layout.Alignment.ALIGN_NORMAL, timeSlotWidth);
+        dateLayout = buildLayout(dateText, datePaint, dateAlignment, dateSlotWidth);
+        externalLayout = buildLayout(externalText, datePaint, Layout.Alignment.ALIGN_NORMAL, 0);
+
+        requestLayout();
+        invalidate();
+    }
+
+    // The slot width was still being measured when the preferences were applied
+    private void onDateWidthReady() {
+        int width = TextWidthCache.getDateWidth(datePaint, datePattern, Locale.getDefault(), dateWidthCallback);
+        if (width == dateSlotWidth) {
+            return;
+        }
+        dateSlotWidth = width;
+        dateLayout = buildLayout(dateText, datePaint, dateAlignment, dateSlotWidth);
+        ensureAtlases();
+        dateFromAtlas = canDrawFromAtlas(dateAtlas, dateText, dateLayout);
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    public void setTimeText(String text) {
+        if (text.equals(timeText)) {
+            return;
+        }
+        if (countStats) {
+            PerfBudget.count(PerfBudget.TEXT_UPDATES);
+        }
+        String oldText = timeText;
+        boolean wasFromAtlas = timeFromAtlas;
+        timeText = text;
+        ensureAtlases();
+        timeFromAtlas = canDrawFromAtlas(timeAtlas, text, timeLayout);
+        // The unchanged head is drawn the same way only when the drawing path stays the same
+        Rect dirtyRegion = getTimeDirtyRegion(wasFromAtlas == timeFromAtlas ? oldText : "", text);
+        if (timeFromAtlas) {
+            invalidateRegion(dirtyRegion);
+        } else {
+            timeLayout = updateLayout(timeLayout, text, timePaint, Layout.Alignment.ALIGN_NORMAL, timeSlotWidth, dirtyRegion);
+        }
+    }
+
+    @Override
+    public void setDateText(String text) {
+        if (text.equals(dateText)) {
+            return;
+        }
+        if (countStats) {
+            PerfBudget.count(PerfBudget.TEXT_UPDATES);
+        }
+        dateText = text;
+        ensureAtlases();
+        dateFromAtlas = canDrawFromAtlas(dateAtlas, text, dateLayout);
+        if (dateFromAtlas) {
+            invalidateRegion(getDateDirtyRegion(dateBounds));
+        } else {
+            dateLayout = updateLayout(dateLayout, text, datePaint, dateAlignment, dateSlotWidth, getDateDirtyRegion(dateBounds));
+        }
+    }
+
+    @Override
+    public void setExternalText(String text) {
+        // Spaces keep the outline from being cropped, like in the date
+        String paddedText = text.isEmpty() ? "" : " " + text + " ";
+        if (paddedText.equals(externalText)) {
+            return;
+        }
+        if (countStats) {
+            PerfBudget.count(PerfBudget.TEXT_UPDATES);
+        }
+        externalText = paddedText;
+        externalLayout = updateLayout(externalLayout, paddedText, datePaint, Layout.Alignment.ALIGN_NORMAL, 0, getDateDirtyRegion(externalBounds));
+    }
+
+    @Override
+    public void setWifiIcon(int resource) {
+        if (resource == wifiIconResource) {
+            return;
+        }
+        if (countStats) {
+            PerfBudget.count(PerfBudget.ICON_UPDATES);
+        }
+        wifiIconResource = resource;
+        wifiIcon = ContextCompat.getDrawable(getContext(), resource);
+        setIconBounds(wifiIcon, wifiBounds);
+        staticLayerDirty = true;
+        invalidateRegion(wifiBounds);
+    }
+
+    @Override
+    public void setGnssIcon(int resource) {
+        if (resource == gnssIconResource) {
+            return;
+        }
+        if (countStats) {
+            PerfBudget.count(PerfBudget.ICON_UPDATES);
+        }
+        gnssIconResource = resource;
+        gnssIcon = ContextCompat.getDrawable(getContext(), resource);
+        setIconBounds(gnssIcon, gnssBounds);
+        staticLayerDirty = true;
+        invalidateRegion(gnssBounds);
+    }
+
+    @Override
+    public int findIconAt(int x, int y) {
+        if (showWifiIcon && wifiBounds.contains(x, y)) {
+            return ICON_WIFI;
+        }
+        if (showGnssIcon && gnssBounds.contains(x, y)) {
+            return ICON_GNSS;
+        }
+        return ICON_NONE;
+    }
+
+    // Only a text that outgrows its slot needs a new measure pass, otherwise its region is redrawn
+    private StaticLayout updateLayout(StaticLayout oldLayout, String text, TextPaint paint, Layout.Alignment alignment, int slotWidth, Rect bounds) {
+        StaticLayout layout = buildLayout(text, paint, alignment, slotWidth);
+        if (layout.getWidth() != oldLayout.getWidth() || layout.getHeight() != oldLayout.getHeight()) {
+            requestLayout();
+            invalidate();
+        } else {
+            invalidateRegion(bounds);
+        }
+        return layout;
+    }
+
+    // Only the changed tail of the time, usually just the seconds, has to be redrawn
+    private Rect getTimeDirtyRegion(String oldText, String newText) {
+        int start = 0;
+        if (oldText.length() == newText.length()) {
+            while (start < newText.length() && oldText.charAt(start) == newText.charAt(start)) {
+                start++;
+            }
+        }
+        float offset = timeFromAtlas ? timeAtlas.measure(newText, 0, start) : timePaint.measureText(newText, 0, start);
+        int left = timeBounds.left + (int) offset - (int) Math.ceil(timeOutlineWidth) - 1;
+        timeDirtyRegion.set(Math.max(timeBounds.left, left), timeBounds.top, timeBounds.right, timeBounds.bottom);
+        timeDirtyRegion.offset(0, adjustTimeY);
+        return timeDirtyRegion;
+    }
+
+    // The date line, external text included, is drawn moved by its vertical adjustment
+    private Rect getDateDirtyRegion(Rect bounds) {
+        dateDirtyRegion.set(bounds);
+        dateDirtyRegion.offset(0, adjustDateY);
+        return dateDirtyRegion;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void invalidateRegion(Rect bounds) {
+        // With hardware acceleration the dirty rectangle is only a hint, but we still skip measure and layout
+        invalidate(bounds);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = padding + getTextBlockWidth() + spacing
+                + (showWifiIcon ? iconSize : 0) + (showGnssIcon ? iconSize : 0) + padding;
+        int height = Math.max(showTime ? timeLayout.getHeight() : 0, showDate ? dateLayout.getHeight() : 0);
+        if (!externalText.isEmpty()) {
+            height = Math.max(height, externalLayout.getHeight());
+        }
+        if (showWifiIcon || showGnssIcon) {
+            height = Math.max(height, iconSize);
+        }
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (countStats) {
+            RenderStats.onLayout();
+        }
+
+        int height = bottom - top;
+        int x = padding;
+
+        if (showTime) {
+            int y = (height - timeLayout.getHeight()) / 2;
+            timeBounds.set(x, y, x + timeLayout.getWidth(), y + timeLayout.getHeight());
+            x += timeLayout.getWidth() + timeMarginEnd;
+        } else {
+            timeBounds.setEmpty();
+        }
+
+        if (showDate) {
+            int y = (height - dateLayout.getHeight()) / 2;
+            dateBounds.set(x, y, x + dateLayout.getWidth(), y + dateLayout.getHeight());
+            x += dateLayout.getWidth();
+        } else {
+            dateBounds.setEmpty();
+        }
+
+        if (!externalText.isEmpty()) {
+            x += timeMarginEnd;
+            int y = (height - externalLayout.getHeight()) / 2;
+            externalBounds.set(x, y, x + externalLayout.getWidth(), y + externalLayout.getHeight());
+            x += externalLayout.getWidth();
+        } else {
+            externalBounds.setEmpty();
+        }
+        x += spacing;
+
+        int iconTop = (height - iconSize) / 2;
+        if (showWifiIcon) {
+            wifiBounds.set(x, iconTop, x + iconSize, iconTop + iconSize);
+            x += iconSize;
+        } else {
+            wifiBounds.setEmpty();
+        }
+        if (showGnssIcon) {
+            gnssBounds.set(x, iconTop, x + iconSize, iconTop + iconSize);
+        } else {
+            gnssBounds.setEmpty();
+        }
+
+        setIconBounds(wifiIcon, wifiBounds);
+        setIconBounds(gnssIcon, gnssBounds);
+
+        background.setBounds(0, 0, right - left, height);
+        background.setCornerRadius(Math.min(right - left, height) / 2F);
+        staticLayerDirty = true;
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        // Off-screen drawing (e.g. the render benchmark) is not counted
+        if (countStats) {
+            RenderStats.onDraw();
+        }
+        if (staticLayer != null && canvas.isHardwareAccelerated() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            drawStaticLayer(canvas);
+        } else {
+            drawStaticParts(canvas);
+        }
+
+        if (showTime) {
+            if (timeFromAtlas) {
+                drawAtlasText(canvas, timeAtlas, timeText, timeLayout, timeBounds.left, timeBounds.top + adjustTimeY);
+            } else {
+                drawText(canvas, timeLayout, timePaint, timeOutlineWidth, timeBounds.left, timeBounds.top + adjustTimeY);
+            }
+        }
+        if (showDate) {
+            if (dateFromAtlas) {
+                drawAtlasText(canvas, dateAtlas, dateText, dateLayout, dateBounds.left, dateBounds.top + adjustDateY);
+            } else {
+                drawText(canvas, dateLayout, datePaint, dateOutlineWidth, dateBounds.left, dateBounds.top + adjustDateY);
+            }
+        }
+        if (!externalText.isEmpty()) {
+            drawText(canvas, externalLayout, datePaint, dateOutlineWidth, externalBounds.left, externalBounds.top + adjustDateY);
+        }
+
+        if (firstDrawCallback != null) {
+            post(firstDrawCallback);
+            firstDrawCallback = null;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (staticLayer != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            staticLayer.discardDisplayList();
+            staticLayerDirty = true;
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (windowVisibilityListener != null) {
+            windowVisibilityListener.onWindowVisibilityChanged(visibility);
+        }
+    }
+
+    private int getTextBlockWidth() {
+        int width = 0;
+        if (showTime) {
+            width += timeLayout.getWidth() + timeMarginEnd;
+        }
+        if (showDate) {
+            width += dateLayout.getWidth();
+        }
+        if (!externalText.isEmpty()) {
+            width += timeMarginEnd + externalLayout.getWidth();
+        }
+        return width;
+    }
+
+    // Background and icons, the parts of the overlay that do not change on a clock tick
+    private void drawStaticParts(Canvas canvas) {
+        background.draw(canvas);
+        if (showWifiIcon && wifiIcon != null) {
+            wifiIcon.draw(canvas);
+        }
+        if (showGnssIcon && gnssIcon != null) {
+            gnssIcon.draw(canvas);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static RenderNode createStaticLayer() {
+        RenderNode layer = new RenderNode("StatusWidgetStaticLayer");
+        layer.setUseCompositingLayer(true, null);
+        return layer;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private void drawStaticLayer(Canvas canvas) {
+        if (staticLayerDirty || !staticLayer.hasDisplayList()) {
+            staticLayer.setPosition(0, 0, getWidth(), getHeight());
+            RecordingCanvas recordingCanvas = staticLayer.beginRecording();
+            try {
+                drawStaticParts(recordingCanvas);
+            } finally {
+                staticLayer.endRecording();
+            }
+            staticLayerDirty = false;
+        }
+        canvas.drawRenderNode(staticLayer);
+    }
+
+    private void drawText(Canvas canvas, StaticLayout layout, TextPaint paint, float outlineWidth, int x, int y) {
+        canvas.save();
+        canvas.translate(x, y);
+        if (outlineWidth > 0) {
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(outlineWidth);
+            paint.setColor(outlineColor);
+            layout.draw(canvas);
+            paint.setStyle(Paint.Style.FILL);
+        }
+        paint.setColor(textColor);
+        layout.draw(canvas);
+        canvas.restore();
+    }
+
+    // The atlases depend on the fonts, the outline and the date pattern, so they are rebuilt on the first text update after a change
+    private void ensureAtlases() {
+        if (!useGlyphAtlas || !atlasesDirty) {
+            return;
+        }
+        if (timeAtlas != null) {
+            timeAtlas.recycle();
+        }
+        if (dateAtlas != null) {
+            dateAtlas.recycle();
+        }
+        timeAtlas = showTime ? GlyphAtlas.build(GlyphAtlas.TIME_CHARACTERS, timePaint, timeOutlineWidth, textColor, outlineColor) : null;
+        dateAtlas = showDate ? GlyphAtlas.build(GlyphAtlas.collectDateCharacters(datePattern, Locale.getDefault()), datePaint, dateOutlineWidth, textColor, outlineColor) : null;
+        atlasesDirty = false;
+    }
+
+    // The current layout keeps its size as long as the number of lines is the same, the slot is wide enough for any value
+    private static boolean canDrawFromAtlas(@Nullable GlyphAtlas atlas, String text, StaticLayout layout) {
+        if (atlas == null || !atlas.canDraw(text)) {
+            return false;
+        }
+        int lineCount = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        return lineCount == layout.getLineCount();
+    }
+
+    // Places the lines the same way the layout would and draws them glyph by glyph
+    private static void drawAtlasText(Canvas canvas, GlyphAtlas atlas, String text, StaticLayout layout, int x, int y) {
+        int line = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                float freeSpace = layout.getWidth() - atlas.measure(text, lineStart, i);
+                float lineX = x + switch (layout.getAlignment()) {
+                    case ALIGN_CENTER -> freeSpace / 2F;
+                    case ALIGN_OPPOSITE -> freeSpace;
+                    default -> 0F;
+                };
+                atlas.drawLine(canvas, text, lineStart, i, lineX, y + layout.getLineBaseline(line));
+                line++;
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    // Fits the icon into its box the same way ImageView's FIT_CENTER does, keeping the horizontal padding
+    private void setIconBounds(@Nullable Drawable icon, Rect box) {
+        if (icon == null || box.isEmpty()) {
+            return;
+        }
+        int availableWidth = Math.max(0, box.width() - 2 * iconPadding);
+        int availableHeight = box.height();
+        int intrinsicWidth = icon.getIntrinsicWidth();
+        int intrinsicHeight = icon.getIntrinsicHeight();
+        if (intrinsicWidth <= 0 || intrinsicHeight <= 0) {
+            icon.setBounds(box.left + iconPadding, box.top, box.right - iconPadding, box.bottom);
+            return;
+        }
+        float scale = Math.min((float) availableWidth / intrinsicWidth, (float) availableHeight / intrinsicHeight);
+        int width = Math.round(intrinsicWidth * scale);
+        int height = Math.round(intrinsicHeight * scale);
+        int left = box.left + iconPadding + (availableWidth - width) / 2;
+        int top = box.top + (availableHeight - height) / 2;
+        icon.setBounds(left, top, left + width, top + height);
+    }
+
+    private static StaticLayout buildLayout(String text, TextPaint paint, Layout.Alignment alignment, int slotWidth) {
+        // The slot is wide enough for any value, a wider text (e.g. an unexpected locale) still fits
+        int width = Math.max(slotWidth, TextSlots.measureWidestLine(text, paint));
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                .setAlignment(alignment)
+                .setIncludePad(true)
+                .build();
+    }
+}
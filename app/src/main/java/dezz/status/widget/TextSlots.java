@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.text.Layout;
+import android.text.TextPaint;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Measures fixed-width slots for the time and date texts. A slot fits every value the pattern
+ * can produce, so the overlay keeps its size while the clock ticks and a new value only needs
+ * a redraw.
+ */
+public final class TextSlots {
+    private TextSlots() {
+    }
+
+    /**
+     * Returns the width of the time pattern with every field filled with the widest digit, e.g. "88:88".
+     */
+    public static int measureTimeWidth(TextPaint paint, String pattern) {
+        char widestDigit = '0';
+        float widestDigitWidth = 0F;
+        for (char digit = '0'; digit <= '9'; digit++) {
+            float width = paint.measureText(String.valueOf(digit));
+            if (width > widestDigitWidth) {
+                widestDigit = digit;
+                widestDigitWidth = width;
+            }
+        }
+
+        StringBuilder sample = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            sample.append(Character.isLetter(c) ? widestDigit : c);
+        }
+        return measureWidestLine(sample, paint);
+    }
+
+    /**
+     * Returns the width of the widest line the date pattern produces over a whole year, which covers
+     * every day number, day of the week and month name of the locale.
+     */
+    public static int measureDateWidth(TextPaint paint, String pattern, Locale locale) {
+        if (pattern.isEmpty()) {
+            return 0;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+        Calendar calendar = Calendar.getInstance(locale);
+        calendar.clear();
+        calendar.set(2025, Calendar.JANUARY, 1);
+
+        int width = 0;
+        for (int day = 0; day < 365; day++) {
+            width = Math.max(width, measureWidestLine(format.format(calendar.getTime()), paint));
+            calendar.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return width;
+    }
+
+    static int measureWidestLine(CharSequence text, TextPaint paint) {
+        int width = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                width = Math.max(width, (int) Math.ceil(Layout.getDesiredWidth(text, lineStart, i, paint)));
+                lineStart = i + 1;
+            }
+        }
+        return width;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the date slot widths per pattern, locale, font and text size. Measuring a slot formats a
+ * whole year of dates, so a missing width is measured on a background thread while the date is
+ * laid out at its own width, and the callbacks are told on the main thread once it is known.
+ * Everything except the measuring itself happens on the main thread, other threads, such as the
+ * render benchmark, get the width measured right away and don't touch the cache.
+ */
+final class TextWidthCache {
+    interface Callback {
+        void onDateWidthReady();
+    }
+
+    private static final int MAX_ENTRIES = 32;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Map<String, Integer> widths = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final Map<String, List<Callback>> pending = new HashMap<>();
+
+    private TextWidthCache() {
+    }
+
+    /**
+     * Returns the slot width for the date pattern, or 0 if it is still being measured. In that
+     * case the callback is called once the width is known and the caller should ask again.
+     */
+    static int getDateWidth(TextPaint paint, String pattern, Locale locale, Callback callback) {
+        if (pattern.isEmpty()) {
+            return 0;
+        }
+
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            return TextSlots.measureDateWidth(paint, pattern, locale);
+        }
+
+        String key = getKey(paint, pattern, locale);
+        Integer width = widths.get(key);
+        if (width != null) {
+            return width;
+        }
+
+        List<Callback> callbacks = pending.get(key);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            pending.put(key, callbacks);
+            // The paint belongs to a view, the measuring thread gets its own copy
+            TextPaint measurePaint = new TextPaint(paint);
+            executor.execute(() -> {
+                int measuredWidth = TextSlots.measureDateWidth(measurePaint, pattern, locale);
+                mainHandler.post(() -> onMeasured(key, measuredWidth));
+            });
+        }
+        if (!callbacks.contains(callback)) {
+            callbacks.add(callback);
+        }
+        return 0;
+    }
+
+    private static void onMeasured(String key, int width) {
+        widths.put(key, width);
+        List<Callback> callbacks = pending.remove(key);
+        if (callbacks != null) {
+            for (Callback callback : callbacks) {
+                callback.onDateWidthReady();
+            }
+        }
+    }
+
+    private static String getKey(TextPaint paint, String pattern, Locale locale) {
+        // Typefaces loaded from resources are cached, so the same font is the same object
+        return locale.toLanguageTag() + '|' + pattern + '|' + paint.getTextSize() + '|'
+                + System.identityHashCode(paint.getTypeface()) + '|' + paint.getFlags()
+                + '|' + paint.getLetterSpacing();
+    }
+}
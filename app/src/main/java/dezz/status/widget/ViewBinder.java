@@ -7,19 +7,26 @@ import android.widget.TextView;
 import androidx.appcompat.widget.SwitchCompat;
 
 public final class ViewBinder {
+    public interface ChangeListener {
+        // A seekbar being dragged reports its intermediate values as not committed
+        void onPreferenceChanged(boolean committed);
+    }
+
     private final Context context;
+    private final ChangeListener changeListener;
 
-    public ViewBinder(Context context) {
+    public ViewBinder(Context context, ChangeListener changeListener) {
         this.context = context;
+        this.changeListener = changeListener;
     }
 
     public void bindCheckbox(SwitchCompat checkbox, Preferences.Bool preference) {
+        // Views are rebound when another overlay is selected, the old listener must not see the new value
+        checkbox.setOnCheckedChangeListener(null);
         checkbox.setChecked(preference.get());
         checkbox.setOnCheckedChangeListener((buttonView, isChecked) -> {
             preference.set(isChecked);
-            if (WidgetService.isRunning()) {
-                WidgetService.getInstance().applyPreferences();
-            }
+            changeListener.onPreferenceChanged(true);
         });
     }
 
@@ -37,23 +44,29 @@ public final class ViewBinder {
 
     public void bindSeekbar(SeekBar seekBar, TextView valueText, Preferences.Int preference, ValueTextFormatter formatter) {
         int progress = preference.get();
+        seekBar.setOnSeekBarChangeListener(null);
         seekBar.setProgress(progress);
         valueText.setText(formatter.formatValueText(progress));
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            private boolean tracking = false;
+
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 preference.set(progress);
                 valueText.setText(formatter.formatValueText(progress));
-                if (WidgetService.isRunning()) {
-                    WidgetService.getInstance().applyPreferences();
-                }
+                changeListener.onPreferenceChanged(!tracking);
             }
 
             @Override
-            public void onStartTrackingTouch(SeekBar seekBar) {}
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                tracking = true;
+            }
 
             @Override
-            public void onStopTrackingTouch(SeekBar seekBar) {}
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                tracking = false;
+                changeListener.onPreferenceChanged(true);
+            }
         });
     }
 
@@ -18,17 +18,14 @@
 package dezz.status.widget;
 
 import android.annotation.SuppressLint;
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
-import android.graphics.PixelFormat;
-import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
 import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationListener;
@@ -40,29 +37,18 @@ import android.net.NetworkRequest;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
-import android.provider.Settings;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
 import android.util.Log;
-import android.util.TypedValue;
-import android.view.Gravity;
-import android.view.LayoutInflater;
-import android.view.MotionEvent;
-import android.view.View;
-import android.view.ViewGroup;
-import android.view.WindowManager;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
-import androidx.core.content.ContextCompat;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Locale;
-
-import dezz.status.widget.databinding.OverlayStatusWidgetBinding;
+import java.util.List;
 
 public class WidgetService extends Service {
     enum GnssState {
@@ -73,81 +59,77 @@ public class WidgetService extends Service {
         OFF, NO_INTERNET, INTERNET
     }
 
-    private static final int[] GNSS_ICONS_MONO = {
-            R.drawable.ic_mono_gps_off,
-            R.drawable.ic_mono_gps_bad,
-            R.drawable.ic_mono_gps_good
-    };
-    private static final int[] WIFI_ICONS_MONO = {
-            R.drawable.ic_mono_wifi_off,
-            R.drawable.ic_mono_wifi_no_internet,
-            R.drawable.ic_mono_wifi_internet
-    };
-
-    private static final int[] GNSS_ICONS_COLOR = {
-            R.drawable.ic_color_gps_off,
-            R.drawable.ic_color_gps_bad,
-            R.drawable.ic_color_gps_good
-    };
-    private static final int[] WIFI_ICONS_COLOR = {
-            R.drawable.ic_color_wifi_off,
-            R.drawable.ic_color_wifi_no_internet,
-            R.drawable.ic_color_wifi_internet
-    };
-
-    private static final int[] GNSS_ICONS_MONOCOLOR = {
-            R.drawable.ic_monocolor_gps_off,
-            R.drawable.ic_monocolor_gps_bad,
-            R.drawable.ic_monocolor_gps_good
-    };
-    private static final int[] WIFI_ICONS_MONOCOLOR = {
-            R.drawable.ic_monocolor_wifi_off,
-            R.drawable.ic_monocolor_wifi_no_internet,
-            R.drawable.ic_monocolor_wifi_internet
-    };
-
     private static final String TAG = "WidgetService";
     private static final int NOTIFICATION_ID = 1001;
     private static final String CHANNEL_ID = "WidgetServiceChannel";
     private static final long GNSS_STATUS_CHECK_INTERVAL = 1000;
+    // Without location updates the number of satellites in the fix stands in for its accuracy
+    private static final int MIN_SATELLITES_FOR_GOOD_FIX = 4;
+    // startForeground() must happen soon after startForegroundService() even if the overlay is never drawn
+    private static final long STARTUP_COMPLETION_TIMEOUT = 2000;
+    private static final int ALL_OVERLAYS = (1 << Preferences.MAX_OVERLAYS) - 1;
+
+    private static final int[] GNSS_STATE_TEXTS = {
+            R.string.notification_gnss_off,
+            R.string.notification_gnss_bad,
+            R.string.notification_gnss_good
+    };
+    private static final int[] WIFI_STATE_TEXTS = {
+            R.string.notification_wifi_off,
+            R.string.notification_wifi_no_internet,
+            R.string.notification_wifi_internet
+    };
 
     private static WidgetService instance;
 
     private Preferences prefs;
 
-    private WindowManager windowManager;
-    private WindowManager.LayoutParams params;
-
-    private OverlayStatusWidgetBinding binding;
+    private final List<OverlayWindow> overlays = new ArrayList<>();
 
-    private int initialX;
-    private int initialY;
-    private float initialTouchX;
-    private float initialTouchY;
     private GnssState gnssState = GnssState.OFF;
     private WiFiState wifiState = WiFiState.OFF;
+    private IndicatorStateStore stateStore;
+    private StatusApi statusApi;
+
+    // Pushed by companion apps through StatusApi, a state of -1 keeps our own one
+    private String externalText = "";
+    private int externalGnssState = StatusApi.STATE_OWN;
+    private int externalWifiState = StatusApi.STATE_OWN;
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private LocationManager locationManager = null;
+    private boolean locationUpdatesRequested = false;
     private ConnectivityManager connectivityManager = null;
     private long lastLocationUpdateTime = 0;
+    private final GnssFixFilter gnssFixFilter = new GnssFixFilter();
 
-    private GradientDrawable background = null;
-    private int bgColor = -1;
-    private int bgCornerRadius = -1;
+    private OverlayLifecycleController lifecycleController;
+    private ProfileSwitcher profileSwitcher;
+    private StatusNotifier statusNotifier;
+    private java.text.DateFormat notificationTimeFormat;
+    private boolean startupCompleted = false;
 
-    private final Runnable updateDateTimeRunnable = new Runnable() {
+    private final ClockTicker clockTicker = new ClockTicker(mainHandler, () -> {
+        for (OverlayWindow overlay : overlays) {
+            overlay.updateDateTime();
+        }
+        updateNotification();
+    });
+
+    // The ticker is aligned to the wall clock, so it has to be realigned when the time jumps
+    private final BroadcastReceiver timeChangeReceiver = new BroadcastReceiver() {
         @Override
-        public void run() {
-            updateDateTime();
-            mainHandler.postDelayed(this, 1000);
+        public void onReceive(Context context, Intent intent) {
+            clockTicker.restart();
         }
     };
+    private boolean timeChangeReceiverRegistered = false;
 
     private final Runnable updateGnssStatusRunnable = new Runnable() {
         @Override
         public void run() {
             if (System.currentTimeMillis() - lastLocationUpdateTime > 10000) {
+                gnssFixFilter.reset();
                 setGnssStatus(GnssState.OFF);
             } else if (System.currentTimeMillis() - lastLocationUpdateTime > 5000) {
                 setGnssStatus(GnssState.BAD);
@@ -167,6 +149,7 @@ public class WidgetService extends Service {
         @Override
         public void onStopped() {
             Log.d(TAG, "GNSS is stopped");
+            gnssFixFilter.reset();
             setGnssStatus(GnssState.OFF);
         }
 
@@ -175,6 +158,21 @@ public class WidgetService extends Service {
             Log.d(TAG, "GNSS has first fix");
             setGnssStatus(GnssState.BAD);
         }
+
+        @Override
+        public void onSatelliteStatusChanged(@NonNull GnssStatus status) {
+            // With location updates the fix filter decides, this only keeps the mirrored state current
+            if (locationUpdatesRequested) {
+                return;
+            }
+            int usedInFix = 0;
+            for (int i = 0; i < status.getSatelliteCount(); i++) {
+                if (status.usedInFix(i)) {
+                    usedInFix++;
+                }
+            }
+            setGnssStatus(usedInFix >= MIN_SATELLITES_FOR_GOOD_FIX ? GnssState.GOOD : GnssState.BAD);
+        }
     };
 
     private final LocationListener locationListener = new LocationListener() {
@@ -182,11 +180,8 @@ public class WidgetService extends Service {
         public void onLocationChanged(@NonNull Location location) {
             Log.d(TAG, "Location changed: " + location);
             lastLocationUpdateTime = System.currentTimeMillis();
-            if (location.hasAccuracy() && location.getAccuracy() < 20.0) {
-                setGnssStatus(GnssState.GOOD);
-            } else {
-                setGnssStatus(GnssState.BAD);
-            }
+            boolean goodFix = gnssFixFilter.update(location.hasAccuracy(), location.getAccuracy(), SystemClock.elapsedRealtime());
+            setGnssStatus(goodFix ? GnssState.GOOD : GnssState.BAD);
         }
 
         @Override
@@ -227,8 +222,31 @@ public class WidgetService extends Service {
         }
     };
 
+    private final Runnable completeStartupRunnable = this::completeStartup;
+
     @Override
     public void onCreate() {
+        StartupTrace.onServiceCreated();
+        RenderStats.reset();
+        PerfBudget.start();
+        GnssFixFilter.resetStats();
+        SettingsBus.setListener((overlayMask, serviceChanges) -> {
+            if (overlayMask != 0) {
+                applyPreferences(overlayMask);
+            }
+            if ((serviceChanges & SettingsBus.PROFILE_RULES) != 0) {
+                updateProfileRules();
+            }
+            if ((serviceChanges & SettingsBus.GNSS_FILTER) != 0) {
+                gnssFixFilter.configure(prefs);
+            }
+            if ((serviceChanges & SettingsBus.NOTIFICATION) != 0) {
+                lifecycleController.setActiveWhileHidden(prefs.notificationMirror.get());
+                updateSources();
+                updateNotification();
+            }
+        });
+
         prefs = new Preferences(this);
         if (!Permissions.allPermissionsGranted(this)) {
             prefs.widgetEnabled.set(false);
@@ -239,284 +257,392 @@ public class WidgetService extends Service {
         }
 
         instance = this;
+        gnssFixFilter.configure(prefs);
+        statusApi = new StatusApi(this::onExternalStateChanged);
+
+        stateStore = new IndicatorStateStore(prefs, mainHandler);
+        gnssState = stateStore.restoreGnssState();
+        wifiState = stateStore.restoreWifiState();
+        if (gnssState != GnssState.OFF) {
+            // Give the restored state the usual grace period before the status check turns it off
+            lastLocationUpdateTime = System.currentTimeMillis();
+        }
 
-        windowManager = getSystemService(WindowManager.class);
+        lifecycleController = new OverlayLifecycleController(this, mainHandler, new OverlayLifecycleController.Listener() {
+            @Override
+            public void onSuspendedChanged(boolean suspended) {
+                WidgetService.this.onSuspendedChanged(suspended);
+            }
 
-        createOverlayView();
+            @Override
+            public void onDisplayAdded(int displayId) {
+                WidgetService.this.onDisplayAdded(displayId);
+            }
 
-        createNotificationChannel();
-        startForeground(NOTIFICATION_ID, createNotification());
-    }
-
-    private void createOverlayView() {
-        // Create the overlay view
-        LayoutInflater layoutInflater = LayoutInflater.from(this);
-        binding = OverlayStatusWidgetBinding.inflate(layoutInflater);
-        binding.getRoot().setVisibility(View.VISIBLE);
-        binding.getRoot().addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
-            int backgroundCornerRadius = Math.min(binding.getRoot().getWidth(), binding.getRoot().getHeight()) / 2;
-            int backgroundColor = ContextCompat.getColor(this, R.color.widget_background) & 0x00FFFFFF | (prefs.backgroundAlpha.get() << 24);
-            binding.overlayContainer.setBackground(getBackground(backgroundColor, backgroundCornerRadius));
+            @Override
+            public void onDisplayRemoved(int displayId) {
+                WidgetService.this.onDisplayRemoved(displayId);
+            }
         });
+        lifecycleController.setActiveWhileHidden(prefs.notificationMirror.get());
+
+        // Show the overlays with the state we already have first. Sources, the notification channel
+        // and the foreground notification are set up once the first frame is out.
+        if (!syncOverlays()) {
+            // We were started with startForegroundService(), so the service must still go
+            // foreground before it stops or the system kills the app.
+            startForegroundNotification();
+            return;
+        }
+        for (OverlayWindow overlay : overlays) {
+            if (overlay.isAttached()) {
+                overlay.setFirstDrawCallback(() -> {
+                    StartupTrace.onFirstFrame();
+                    completeStartup();
+                });
+                break;
+            }
+        }
+        mainHandler.postDelayed(completeStartupRunnable, STARTUP_COMPLETION_TIMEOUT);
+    }
 
-        applyPreferences();
-
-        updateWifiStatus();
-        updateGnssStatus();
-
-        // Set up drag listener
-        setupDragListener();
-
-        // Add the view to the window
-        params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
-                        WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
-                ,
-                PixelFormat.TRANSLUCENT
-        );
-        params.gravity = Gravity.TOP | Gravity.START;
-        params.x = prefs.overlayX.get();
-        params.y = prefs.overlayY.get();
-
-        try {
-            windowManager.addView(binding.getRoot(), params);
-        } catch (Exception e) {
-            Toast.makeText(this, R.string.overlay_permission_required, Toast.LENGTH_LONG).show();
-            stopSelf();
+    private void completeStartup() {
+        if (startupCompleted) {
+            return;
         }
+        startupCompleted = true;
+        mainHandler.removeCallbacks(completeStartupRunnable);
+
+        startForegroundNotification();
+
+        lifecycleController.start();
+        profileSwitcher = new ProfileSwitcher(this, mainHandler, this::applyPreferences);
+        profileSwitcher.start();
+        updateSources();
     }
 
-    @Override
-    public void onConfigurationChanged(@NonNull Configuration newConfig) {
-        super.onConfigurationChanged(newConfig);
-        if (binding != null) {
-            windowManager.removeView(binding.getRoot());
-            createOverlayView();
+    private void startForegroundNotification() {
+        if (statusNotifier != null) {
+            return;
         }
+        createNotificationChannel();
+        statusNotifier = new StatusNotifier(this, mainHandler, CHANNEL_ID, NOTIFICATION_ID);
+        startForeground(NOTIFICATION_ID, statusNotifier.build(getNotificationText()));
     }
 
-    @SuppressLint("MissingPermission")
-    public void applyPreferences() {
-        updateDateTime();
+    private void onSuspendedChanged(boolean suspended) {
+        if (!startupCompleted) {
+            return;
+        }
+
+        if (!suspended) {
+            for (OverlayWindow overlay : overlays) {
+                overlay.updateDateTime();
+            }
+            // Boundaries scheduled by uptime are late after a deep sleep
+            profileSwitcher.evaluate();
+        }
+        updateSources();
+        if (suspended) {
+            stateStore.flush();
+        }
+        updateNotification();
+    }
+
+    private void onDisplayAdded(int displayId) {
+        boolean changed = false;
+        for (OverlayWindow overlay : overlays) {
+            if (!overlay.isAttached() && overlay.getPreferences().displayId.get() == displayId) {
+                Log.i(TAG, "Display " + displayId + " is added, showing the overlay on it");
+                if (!overlay.attach()) {
+                    onAttachFailed();
+                    return;
+                }
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateTrackedDisplays();
+            updateSources();
+        }
+    }
 
-        int iconSize = prefs.iconSize.get();
-        int timeFontSize = prefs.timeFontSize.get();
-        int dateFontSize = prefs.dateFontSize.get();
-        int padding = Math.max(iconSize, Math.max(timeFontSize, dateFontSize)) / 2;
+    private void onDisplayRemoved(int displayId) {
+        boolean changed = false;
+        for (OverlayWindow overlay : overlays) {
+            if (overlay.isAttached() && overlay.getDisplayId() == displayId) {
+                Log.i(TAG, "Display " + displayId + " is removed, detaching the overlay from it");
+                overlay.detach();
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateTrackedDisplays();
+            onOverlayVisibilityChanged();
+            updateSources();
+        }
+    }
 
-        binding.getRoot().setPadding(padding, 0, padding, 0);
+    private void updateTrackedDisplays() {
+        int count = 0;
+        int[] displayIds = new int[overlays.size()];
+        for (OverlayWindow overlay : overlays) {
+            if (overlay.isAttached()) {
+                displayIds[count++] = overlay.getDisplayId();
+            }
+        }
+        lifecycleController.setTrackedDisplays(Arrays.copyOf(displayIds, count));
+    }
 
-        ViewGroup.LayoutParams iconParams = binding.wifiStatusIcon.getLayoutParams();
-        iconParams.width = iconSize;
-        iconParams.height = iconSize;
-        binding.wifiStatusIcon.setLayoutParams(iconParams);
+    void onOverlayVisibilityChanged() {
+        boolean anyVisible = false;
+        for (OverlayWindow overlay : overlays) {
+            anyVisible |= overlay.isWindowVisible();
+        }
+        lifecycleController.setOverlayVisible(anyVisible);
+        updateSources();
+        updateNotification();
+    }
 
-        iconParams = binding.gnssStatusIcon.getLayoutParams();
-        iconParams.width = iconSize;
-        iconParams.height = iconSize;
-        binding.gnssStatusIcon.setLayoutParams(iconParams);
+    // Creates or removes overlay windows to match the configured overlay count
+    private boolean syncOverlays() {
+        int count = Math.max(1, Math.min(Preferences.MAX_OVERLAYS, prefs.overlayCount.get()));
 
-        float timeOutlineWidth = Math.max(2F, prefs.timeFontSize.get() / 32F);
-        float dateOutlineWidth = Math.max(2F, prefs.dateFontSize.get() / 32F);
-        int outlineColor = ContextCompat.getColor(this, R.color.text_outline) & 0x00FFFFFF | (prefs.textOutlineAlpha.get() << 24);
-        binding.timeText.setOutlineColor(outlineColor);
-        binding.timeText.setOutlineWidth(timeOutlineWidth);
-        binding.dateText.setOutlineColor(outlineColor);
-        binding.dateText.setOutlineWidth(dateOutlineWidth);
+        while (overlays.size() > count) {
+            overlays.remove(overlays.size() - 1).detach();
+        }
+        while (overlays.size() < count) {
+            OverlayWindow overlay = new OverlayWindow(this, new Preferences(this, overlays.size()), getShownGnssState(), getShownWifiState());
+            overlay.setExternalText(externalText);
+            if (!overlay.attach()) {
+                onAttachFailed();
+                return false;
+            }
+            overlays.add(overlay);
+        }
+        updateTrackedDisplays();
+        return true;
+    }
 
-        binding.timeText.setTextSize(TypedValue.COMPLEX_UNIT_PX, prefs.timeFontSize.get());
-        binding.dateText.setTextSize(TypedValue.COMPLEX_UNIT_PX, prefs.dateFontSize.get());
-        binding.timeText.setVisibility(prefs.showTime.get() ? View.VISIBLE : View.GONE);
-        binding.dateText.setVisibility(prefs.showDate.get() || prefs.showDayOfTheWeek.get() ? View.VISIBLE : View.GONE);
+    // Adding a window only fails when the overlay permission was taken away, there is nothing to show then
+    private void onAttachFailed() {
+        Toast.makeText(this, R.string.overlay_permission_required, Toast.LENGTH_LONG).show();
+        stopSelf();
+    }
 
-        // Calendar alignment
-        switch (prefs.calendarAlignment.get()) {
-            case 1 -> binding.dateText.setGravity(Gravity.CENTER_HORIZONTAL);
-            case 2 -> binding.dateText.setGravity(Gravity.END);
-            default -> binding.dateText.setGravity(Gravity.START);
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        notificationTimeFormat = null;
+        for (OverlayWindow overlay : overlays) {
+            overlay.detach();
+            if (!overlay.attach()) {
+                onAttachFailed();
+                return;
+            }
         }
+        if (profileSwitcher != null) {
+            profileSwitcher.onConfigurationChanged(newConfig);
+        }
+    }
 
-        // Icons (GPS and WiFi)
-        binding.wifiStatusIcon.setVisibility(prefs.showWifiIcon.get() ? View.VISIBLE : View.GONE);
-        binding.gnssStatusIcon.setVisibility(prefs.showGnssIcon.get() ? View.VISIBLE : View.GONE);
+    public void applyPreferences() {
+        applyPreferences(ALL_OVERLAYS);
+    }
 
-        LinearLayout.LayoutParams dateTimeLayoutParams = (LinearLayout.LayoutParams) binding.dateTimeContainer.getLayoutParams();
-        dateTimeLayoutParams.setMargins(0, 0, prefs.spacingBetweenTextsAndIcons.get(), 0);
-        binding.dateTimeContainer.setLayoutParams(dateTimeLayoutParams);
+    /**
+     * Re-reads the settings of the overlays in the mask (bit N for overlay N) and of the service.
+     */
+    public void applyPreferences(int overlayMask) {
+        if (!syncOverlays()) {
+            return;
+        }
+        boolean displaysChanged = false;
+        for (int i = 0; i < overlays.size(); i++) {
+            if ((overlayMask & (1 << i)) != 0) {
+                displaysChanged |= overlays.get(i).applyPreferences();
+            }
+        }
+        if (displaysChanged) {
+            updateTrackedDisplays();
+            onOverlayVisibilityChanged();
+        }
+        updateSources();
+    }
+
+    // Called when the automatic profile switching settings were changed
+    private void updateProfileRules() {
+        if (profileSwitcher != null) {
+            profileSwitcher.evaluate();
+        }
+    }
 
-        binding.timeText.setTranslationY(prefs.adjustTimeY.get());
-        binding.dateText.setTranslationY(prefs.adjustDateY.get());
+    // Registers the listeners and tickers needed by any of the overlays, or drops all of them
+    // together while the overlays can't be seen.
+    @SuppressLint("MissingPermission")
+    private void updateSources() {
+        boolean active = startupCompleted && !lifecycleController.isSuspended();
+
+        boolean needsClock = false;
+        boolean needsSeconds = false;
+        boolean needsWifiState = false;
+        boolean needsGnssState = false;
+        for (OverlayWindow overlay : overlays) {
+            needsClock |= overlay.needsClock();
+            needsSeconds |= overlay.needsSeconds();
+            needsWifiState |= overlay.needsWifiState();
+            needsGnssState |= overlay.needsGnssState();
+        }
+        // Only the notification shows the status now, it has no seconds and isn't worth keeping GNSS on for
+        boolean mirroring = isMirroring();
+        if (mirroring) {
+            needsSeconds = false;
+        }
 
-        mainHandler.removeCallbacks(updateDateTimeRunnable);
-        if (prefs.showDate.get() || prefs.showTime.get()) {
-            mainHandler.postDelayed(updateDateTimeRunnable, 1000);
+        if (active && needsClock) {
+            clockTicker.start(needsSeconds);
+            if (!timeChangeReceiverRegistered) {
+                IntentFilter filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+                filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+                registerReceiver(timeChangeReceiver, filter);
+                timeChangeReceiverRegistered = true;
+            }
+        } else {
+            clockTicker.stop();
+            if (timeChangeReceiverRegistered) {
+                unregisterReceiver(timeChangeReceiver);
+                timeChangeReceiverRegistered = false;
+            }
         }
 
-        if (prefs.showWifiIcon.get()) {
+        if (active && needsWifiState) {
             if (connectivityManager == null) {
                 connectivityManager = getSystemService(ConnectivityManager.class);
 
+                WiFiState currentState = WiFiState.OFF;
                 for (Network net : connectivityManager.getAllNetworks()) {
                     NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(net);
                     if (capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
                         boolean hasInternet = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
-                        setWifiStatus(hasInternet ? WiFiState.INTERNET : WiFiState.NO_INTERNET);
+                        currentState = hasInternet ? WiFiState.INTERNET : WiFiState.NO_INTERNET;
                         break;
                     }
                 }
+                // Replaces the restored state as well, as the callback below is silent when there is no Wi-Fi
+                setWifiStatus(currentState);
 
                 NetworkRequest networkRequest = new NetworkRequest.Builder().addTransportType(NetworkCapabilities.TRANSPORT_WIFI).build();
                 connectivityManager.registerNetworkCallback(networkRequest, networkCallback);
             }
-            updateWifiStatus();
         } else if (connectivityManager != null) {
             connectivityManager.unregisterNetworkCallback(networkCallback);
             connectivityManager = null;
         }
 
-        if (prefs.showGnssIcon.get()) {
+        if (active && needsGnssState) {
             if (locationManager == null) {
                 locationManager = getSystemService(LocationManager.class);
-
                 locationManager.registerGnssStatusCallback(gnssStatusCallback, mainHandler);
+            }
+            // While mirroring, the status callback alone follows the receiver as long as other apps keep it on
+            if (!mirroring && !locationUpdatesRequested) {
+                locationUpdatesRequested = true;
+                if (gnssState != GnssState.OFF) {
+                    // The usual grace period before the status check turns the last known state off
+                    lastLocationUpdateTime = System.currentTimeMillis();
+                }
                 locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 1000, 0, locationListener, Looper.getMainLooper());
                 mainHandler.postDelayed(updateGnssStatusRunnable, GNSS_STATUS_CHECK_INTERVAL);
+            } else if (mirroring && locationUpdatesRequested) {
+                stopLocationUpdates();
             }
-            updateGnssStatus();
         } else if (locationManager != null) {
-            mainHandler.removeCallbacks(updateGnssStatusRunnable);
-            locationManager.removeUpdates(locationListener);
+            stopLocationUpdates();
             locationManager.unregisterGnssStatusCallback(gnssStatusCallback);
             locationManager = null;
         }
     }
 
-    private Drawable getBackground(int color, int cornerRadius) {
-        if (this.background == null || color != this.bgColor || cornerRadius != this.bgCornerRadius) {
-            this.background = new GradientDrawable();
-            this.background.setColor(color);
-            this.background.setCornerRadius(cornerRadius);
-            this.bgColor = color;
-            this.bgCornerRadius = cornerRadius;
-        }
-
-        return this.background;
-    }
-
-    private void updateDateTime() {
-        boolean showTime = prefs.showTime.get();
-        boolean showDate = prefs.showDate.get();
-        boolean showDayOfTheWeek = prefs.showDayOfTheWeek.get();
-
-        if (!showTime && !showDate && !showDayOfTheWeek) {
+    private void stopLocationUpdates() {
+        if (!locationUpdatesRequested) {
             return;
         }
-
-        boolean showFullDayAndMonth = prefs.showFullDayAndMonth.get();
-
-        String divider = (showDate && showDayOfTheWeek) ? (prefs.oneLineLayout.get() ? "," : " \n") : "";
-        String dayOfTheWeekFormatStr = showFullDayAndMonth ? "EEEE" : "EEE";
-        String dateFormatStr = showFullDayAndMonth ? "d MMMM" : "d MMM";
-
-        // We add spaces at the start/end to avoid outline cropping by canvas which is not ready for the outline
-        String fullFormatStr = (showDayOfTheWeek ? " " + dayOfTheWeekFormatStr + divider : "") + (showDate ? " " + dateFormatStr : "") + " ";
-
-        Date now = new Date();
-        String timeStr = new SimpleDateFormat("HH:mm", Locale.getDefault()).format(now);
-        String dateStr = new SimpleDateFormat(fullFormatStr, Locale.getDefault()).format(now);
-        if (showTime && !timeStr.contentEquals(binding.timeText.getText())) {
-            binding.timeText.setText(timeStr);
-        }
-        if ((showDate || showDayOfTheWeek) && !dateStr.contentEquals(binding.dateText.getText())) {
-            binding.dateText.setText(dateStr);
-        }
-    }
-
-    @SuppressLint("ClickableViewAccessibility")
-    private void setupDragListener() {
-        binding.getRoot().setOnTouchListener((v, event) -> {
-            WindowManager.LayoutParams params = (WindowManager.LayoutParams) binding.getRoot().getLayoutParams();
-
-            switch (event.getAction()) {
-                case MotionEvent.ACTION_DOWN:
-                    initialX = params.x;
-                    initialY = params.y;
-                    initialTouchX = event.getRawX();
-                    initialTouchY = event.getRawY();
-                    return true;
-
-                case MotionEvent.ACTION_MOVE:
-                    params.x = initialX + (int) (event.getRawX() - initialTouchX);
-                    params.y = initialY + (int) (event.getRawY() - initialTouchY);
-                    windowManager.updateViewLayout(binding.getRoot(), params);
-                    return true;
-
-                case MotionEvent.ACTION_UP:
-                    savePosition();
-
-                    // Handle click
-                    if (Math.abs(event.getRawX() - initialTouchX) < 5 && Math.abs(event.getRawY() - initialTouchY) < 5) {
-                        if (binding.wifiStatusIcon.getVisibility() == View.VISIBLE &&
-                                getBounds(binding.wifiStatusIcon).contains((int) event.getX(), (int) event.getY())) {
-                            Intent intent = new Intent(Settings.ACTION_WIFI_SETTINGS);
-                            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            startActivity(intent);
-
-                            return true;
-                        }
-                        if (binding.gnssStatusIcon.getVisibility() == View.VISIBLE &&
-                                getBounds(binding.gnssStatusIcon).contains((int) event.getX(), (int) event.getY())) {
-                            Intent intent = getPackageManager().getLaunchIntentForPackage("dezz.gnssshare.client");
-                            if (intent == null) {
-                                intent = new Intent(Settings.ACTION_LOCATION_SOURCE_SETTINGS);
-                            }
-                            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                            startActivity(intent);
-
-                            return true;
-                        }
-
-                        startMainActivity();
-                    }
-                    return true;
-            }
-            return false;
-        });
+        locationUpdatesRequested = false;
+        mainHandler.removeCallbacks(updateGnssStatusRunnable);
+        locationManager.removeUpdates(locationListener);
+        gnssFixFilter.reset();
     }
 
-    private void startMainActivity() {
+    void startMainActivity() {
         Intent startIntent = new Intent(WidgetService.this, MainActivity.class);
         startIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
         startActivity(startIntent);
     }
 
-    private void setWifiStatus(WiFiState newState) {
-        wifiState = newState;
-        updateWifiStatus();
+    void disableWidget() {
+        prefs.widgetEnabled.set(false);
+        stopSelf();
     }
 
-    private void updateWifiStatus() {
-        updateIconStatus(WIFI_ICONS_MONO, WIFI_ICONS_COLOR, WIFI_ICONS_MONOCOLOR, binding.wifiStatusIcon, wifiState.ordinal());
+    private void setWifiStatus(WiFiState newState) {
+        if (wifiState == newState) {
+            return;
+        }
+        wifiState = newState;
+        stateStore.setWifiState(newState);
+        if (externalWifiState == StatusApi.STATE_OWN) {
+            for (OverlayWindow overlay : overlays) {
+                overlay.setWifiState(newState);
+            }
+            updateNotification();
+        }
     }
 
     private void setGnssStatus(GnssState newState) {
+        if (gnssState == newState) {
+            return;
+        }
         gnssState = newState;
-        updateGnssStatus();
+        stateStore.setGnssState(newState);
+        if (externalGnssState == StatusApi.STATE_OWN) {
+            for (OverlayWindow overlay : overlays) {
+                overlay.setGnssState(newState);
+            }
+            updateNotification();
+        }
+    }
+
+    private GnssState getShownGnssState() {
+        return externalGnssState != StatusApi.STATE_OWN ? GnssState.values()[externalGnssState] : gnssState;
     }
 
-    private void updateGnssStatus() {
-        updateIconStatus(GNSS_ICONS_MONO, GNSS_ICONS_COLOR, GNSS_ICONS_MONOCOLOR, binding.gnssStatusIcon, gnssState.ordinal());
+    private WiFiState getShownWifiState() {
+        return externalWifiState != StatusApi.STATE_OWN ? WiFiState.values()[externalWifiState] : wifiState;
     }
 
-    private void updateIconStatus(int[] monoResources, int[] colorResources, int[] monocolorResources, ImageView icon, int state) {
-        switch (prefs.iconStyle.get()) {
-            case 0 -> icon.setImageResource(monoResources[state]);
-            case 1 -> icon.setImageResource(colorResources[state]);
-            case 2 -> icon.setImageResource(monocolorResources[state]);
+    private void onExternalStateChanged(String text, int gnssOverride, int wifiOverride) {
+        boolean textChanged = !text.equals(externalText);
+        boolean gnssChanged = gnssOverride != externalGnssState;
+        boolean wifiChanged = wifiOverride != externalWifiState;
+        externalText = text;
+        externalGnssState = gnssOverride;
+        externalWifiState = wifiOverride;
+
+        GnssState shownGnssState = getShownGnssState();
+        WiFiState shownWifiState = getShownWifiState();
+        for (OverlayWindow overlay : overlays) {
+            if (textChanged) {
+                overlay.setExternalText(text);
+            }
+            if (gnssChanged) {
+                overlay.setGnssState(shownGnssState);
+            }
+            if (wifiChanged) {
+                overlay.setWifiState(shownWifiState);
+            }
+        }
+        if (gnssChanged || wifiChanged) {
+            updateNotification();
         }
     }
 
@@ -528,32 +654,90 @@ public class WidgetService extends Service {
         }
     }
 
-    private Notification createNotification() {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
-
-        return new NotificationCompat.Builder(this, CHANNEL_ID).setContentTitle(getString(R.string.app_name)).setContentText(getString(R.string.notification_content)).setSmallIcon(R.drawable.ic_mono_gps_good).setContentIntent(pendingIntent).setOngoing(true).build();
+    private void updateNotification() {
+        if (statusNotifier != null) {
+            statusNotifier.update(getNotificationText());
+        }
     }
 
-    // Add this method to save position
-    private void savePosition() {
-        if (params != null) {
-            prefs.overlayX.set(params.x);
-            prefs.overlayY.set(params.y);
+    // While the overlays are hidden on a display that is on, the notification shows what they would
+    private String getNotificationText() {
+        if (!isMirroring()) {
+            return getString(lifecycleController.getStateSummary());
+        }
+
+        boolean showTime = false;
+        boolean showWifi = false;
+        boolean showGnss = false;
+        for (OverlayWindow overlay : overlays) {
+            showTime |= overlay.getPreferences().showTime.get();
+            showWifi |= overlay.needsWifiState();
+            showGnss |= overlay.needsGnssState();
         }
+        StringBuilder text = new StringBuilder();
+        if (showTime) {
+            if (notificationTimeFormat == null) {
+                notificationTimeFormat = DateFormat.getTimeFormat(this);
+            }
+            text.append(notificationTimeFormat.format(new Date()));
+        }
+        if (showWifi) {
+            appendNotificationPart(text, getString(WIFI_STATE_TEXTS[getShownWifiState().ordinal()]));
+        }
+        if (showGnss) {
+            appendNotificationPart(text, getString(GNSS_STATE_TEXTS[getShownGnssState().ordinal()]));
+        }
+        if (text.length() == 0) {
+            return getString(lifecycleController.getStateSummary());
+        }
+        return text.toString();
     }
 
+    private boolean isMirroring() {
+        return prefs.notificationMirror.get() && lifecycleController.isHiddenWhileDisplayOn();
+    }
+
+    private static void appendNotificationPart(StringBuilder text, String part) {
+        if (text.length() > 0) {
+            text.append(" · ");
+        }
+        text.append(part);
+    }
 
     @Override
     public void onDestroy() {
         instance = null;
+        SettingsBus.setListener(null);
+        PerfBudget.stop();
+        if (statusNotifier != null) {
+            statusNotifier.stop();
+        }
+        if (statusApi != null) {
+            statusApi.stop();
+        }
+
+        mainHandler.removeCallbacks(completeStartupRunnable);
+        if (lifecycleController != null) {
+            lifecycleController.stop();
+        }
+        if (profileSwitcher != null) {
+            profileSwitcher.stop();
+        }
+        if (stateStore != null) {
+            stateStore.flush();
+        }
 
         mainHandler.removeCallbacks(updateGnssStatusRunnable);
-        mainHandler.removeCallbacks(updateDateTimeRunnable);
+        clockTicker.stop();
+        if (timeChangeReceiverRegistered) {
+            unregisterReceiver(timeChangeReceiver);
+            timeChangeReceiverRegistered = false;
+        }
 
-        if (binding != null && windowManager != null) {
-            windowManager.removeView(binding.getRoot());
+        for (OverlayWindow overlay : overlays) {
+            overlay.detach();
         }
+        overlays.clear();
 
         if (locationManager != null) {
             locationManager.unregisterGnssStatusCallback(gnssStatusCallback);
@@ -563,23 +747,29 @@ public class WidgetService extends Service {
         if (connectivityManager != null) {
             connectivityManager.unregisterNetworkCallback(networkCallback);
         }
+
+        // The states and positions saved above must not be lost if the process is killed next
+        BinaryPreferenceStore.awaitWrites();
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        if (statusApi == null || !StatusApi.ACTION_BIND.equals(intent.getAction())) {
+            return null;
+        }
+        return statusApi.getBinder();
     }
 
-    public static WidgetService getInstance() {
-        return instance;
+    @Override
+    public boolean onUnbind(Intent intent) {
+        if (statusApi != null) {
+            statusApi.reset();
+        }
+        return false;
     }
 
     public static boolean isRunning() {
         return instance != null;
     }
-
-    private static Rect getBounds(View view) {
-        return new Rect(view.getLeft(), view.getTop(), view.getRight(), view.getBottom());
-    }
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright © 2025 Dezz (https://github.com/DezzK)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dezz.status.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+import static org.robolectric.util.reflector.Reflector.reflector;
+
+import android.Manifest;
+import android.app.Application;
+import android.location.Location;
+import android.location.LocationManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowLocationManager;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowNetwork;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowSettings;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+import org.robolectric.util.reflector.Direct;
+import org.robolectric.util.reflector.ForType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the service for simulated hours of location, GNSS and network events on a paused main
+ * looper and checks the work it does against the {@link PerfBudget} budgets. The work is counted
+ * on the main looper, the window manager and the overlay view itself, so an update path that
+ * doesn't count itself in {@link PerfBudget} still can't go unnoticed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+@Config(shadows = PerfBudgetTest.CountingWindowManager.class)
+public class PerfBudgetTest {
+    private static final long SECOND = 1000;
+    private static final int MINUTES = 2 * 60;
+
+    // Counting messages on the unit would take a message logging printer, so only this test checks it
+    private static final int LOOPER_MESSAGES_PER_MINUTE = 600;
+    // Every text, icon or window update may take a frame of its own, but only icons and window
+    // moves may lay the overlay out, texts keep fixed-width slots
+    private static final int FRAMES_PER_MINUTE = PerfBudget.getBudget(PerfBudget.TEXT_UPDATES)
+            + PerfBudget.getBudget(PerfBudget.ICON_UPDATES) + PerfBudget.getBudget(PerfBudget.WINDOW_UPDATES);
+    private static final int LAYOUTS_PER_MINUTE = PerfBudget.getBudget(PerfBudget.ICON_UPDATES)
+            + PerfBudget.getBudget(PerfBudget.WINDOW_UPDATES);
+
+    private static final int[] COUNTERS = {
+            PerfBudget.TEXT_UPDATES, PerfBudget.ICON_UPDATES, PerfBudget.WINDOW_UPDATES, PerfBudget.PREFERENCE_WRITES
+    };
+
+    private Application application;
+    private ShadowLocationManager locationManager;
+    private ShadowConnectivityManager connectivityManager;
+    private ServiceController<WidgetService> service;
+    // The same noise in every run, so a failure can be reproduced
+    private final Random random = new Random(42);
+    private int frames = 0;
+    private int layouts = 0;
+
+    /**
+     * Counts every window update, whichever code path makes it.
+     */
+    @Implements(className = "android.view.WindowManagerImpl", isInAndroidSdk = false)
+    public static class CountingWindowManager extends ShadowWindowManagerImpl {
+        static int layoutUpdates = 0;
+
+        @RealObject
+        private WindowManager realWindowManager;
+
+        @Implementation
+        public void updateViewLayout(View view, ViewGroup.LayoutParams params) {
+            layoutUpdates++;
+            reflector(WindowManagerReflector.class, realWindowManager).updateViewLayout(view, params);
+        }
+    }
+
+    @ForType(className = "android.view.WindowManagerImpl")
+    interface WindowManagerReflector {
+        @Direct
+        void updateViewLayout(View view, ViewGroup.LayoutParams params);
+    }
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        shadowOf(application).grantPermissions(Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION);
+        ShadowSettings.setCanDrawOverlays(true);
+        locationManager = shadowOf(application.getSystemService(LocationManager.class));
+        locationManager.setProviderEnabled(LocationManager.GPS_PROVIDER, true);
+        connectivityManager = shadowOf(application.getSystemService(ConnectivityManager.class));
+        CountingWindowManager.layoutUpdates = 0;
+    }
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void viewHierarchyStaysWithinBudgets() {
+        runWithinBudgets(Preferences.RENDER_MODE_VIEWS);
+    }
+
+    @Test
+    public void glyphAtlasStaysWithinBudgets() {
+        runWithinBudgets(Preferences.RENDER_MODE_GLYPH_ATLAS);
+    }
+
+    private void runWithinBudgets(int renderMode) {
+        // Everything that ticks or changes on its own is shown
+        Preferences prefs = new Preferences(application);
+        prefs.batch(() -> {
+            prefs.widgetEnabled.set(true);
+            prefs.overlayCount.set(1);
+            prefs.autoProfileMode.set(0);
+            prefs.notificationMirror.set(false);
+            prefs.renderMode.set(renderMode);
+            prefs.showTime.set(true);
+            prefs.showSeconds.set(true);
+            prefs.showDate.set(true);
+            prefs.showDayOfTheWeek.set(true);
+            prefs.showWifiIcon.set(true);
+            prefs.showGnssIcon.set(true);
+            prefs.pixelShift.set(true);
+        });
+
+        service = Robolectric.buildService(WidgetService.class).create();
+        // The sources are started with the first frame, or after the startup timeout at the latest
+        runFor(5 * SECOND);
+        CountingWindowManager windowManager =
+                Shadow.extract(application.getSystemService(WindowManager.class));
+        List<View> views = windowManager.getViews();
+        assertEquals(1, views.size());
+        assertFalse(connectivityManager.getNetworkCallbacks().isEmpty());
+
+        // Every frame goes through the pre-draw pass, whatever made the overlay change
+        ViewTreeObserver observer = views.get(0).getViewTreeObserver();
+        observer.addOnPreDrawListener(() -> {
+            frames++;
+            return true;
+        });
+        observer.addOnGlobalLayoutListener(() -> layouts++);
+
+        // Only the steady state is checked, the startup does its work once
+        PerfBudget.start();
+        CountingWindowManager.layoutUpdates = 0;
+        int totalFrames = 0;
+        int totalWindowUpdates = 0;
+        for (int minute = 0; minute < MINUTES; minute++) {
+            int messages = 0;
+            frames = 0;
+            layouts = 0;
+            CountingWindowManager.layoutUpdates = 0;
+            for (int second = 0; second < 60; second++) {
+                simulateEvents(minute, second);
+                messages += runFor(SECOND);
+            }
+            assertTrue("Main looper messages in minute " + minute + ": " + messages, messages <= LOOPER_MESSAGES_PER_MINUTE);
+            assertTrue("Frames in minute " + minute + ": " + frames, frames <= FRAMES_PER_MINUTE);
+            assertTrue("Layouts in minute " + minute + ": " + layouts, layouts <= LAYOUTS_PER_MINUTE);
+            assertTrue("Window updates in minute " + minute + ": " + CountingWindowManager.layoutUpdates,
+                    CountingWindowManager.layoutUpdates <= PerfBudget.getBudget(PerfBudget.WINDOW_UPDATES));
+            totalFrames += frames;
+            totalWindowUpdates += CountingWindowManager.layoutUpdates;
+        }
+        // Stopping checks the last minute as well
+        service.destroy();
+        service = null;
+
+        // The service's own counters must agree, they are what the diagnostics show on the unit
+        for (int counter : COUNTERS) {
+            assertEquals("Minutes over budget for counter " + counter, 0, PerfBudget.getOverruns(counter));
+        }
+        // Make sure the run did anything at all: the seconds alone take a frame each
+        assertTrue("Frames: " + totalFrames, totalFrames >= MINUTES * 59);
+        assertTrue(totalWindowUpdates > 0);
+        assertTrue(PerfBudget.getTotal(PerfBudget.PREFERENCE_WRITES) > 0);
+    }
+
+    // A drive with a noisy fix, short tunnels, a parking garage and a hotspot with a flaky uplink
+    private void simulateEvents(int minute, int second) {
+        boolean inGarage = minute % 20 == 10 || minute % 20 == 11;
+        boolean inTunnel = minute % 5 == 2 && second < 30;
+        if (minute % 20 == 10 && second == 0) {
+            locationManager.simulateGnssStatusStopped();
+        } else if (minute % 20 == 12 && second == 0) {
+            locationManager.simulateGnssStatusStarted();
+        }
+        if (!inGarage && !inTunnel) {
+            simulateLocation(5 + random.nextFloat() * 25);
+        }
+
+        if (minute % 15 == 7 && second == 0) {
+            simulateWifiLost();
+        } else if (second == 30) {
+            // Loses the uplink every other time
+            simulateWifi(minute % 6 != 3);
+        }
+    }
+
+    private void simulateLocation(float accuracy) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(55.75);
+        location.setLongitude(37.62);
+        location.setAccuracy(accuracy);
+        location.setTime(System.currentTimeMillis());
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        locationManager.simulateLocation(location);
+    }
+
+    private void simulateWifi(boolean hasInternet) {
+        NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+        shadowOf(capabilities).addTransportType(NetworkCapabilities.TRANSPORT_WIFI);
+        if (hasInternet) {
+            shadowOf(capabilities).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        }
+        Network network = ShadowNetwork.newInstance(1);
+        for (ConnectivityManager.NetworkCallback callback : new ArrayList<>(connectivityManager.getNetworkCallbacks())) {
+            callback.onCapabilitiesChanged(network, capabilities);
+        }
+    }
+
+    private void simulateWifiLost() {
+        Network network = ShadowNetwork.newInstance(1);
+        for (ConnectivityManager.NetworkCallback callback : new ArrayList<>(connectivityManager.getNetworkCallbacks())) {
+            callback.onLost(network);
+        }
+    }
+
+    // Runs the main looper for the given time one message at a time and returns how many it handled
+    private static int runFor(long millis) {
+        ShadowLooper looper = shadowOf(Looper.getMainLooper());
+        long end = SystemClock.uptimeMillis() + millis;
+        int messages = 0;
+        while (true) {
+            Duration next = looper.getNextScheduledTaskTime();
+            if (next.isZero() || next.toMillis() > end) {
+                break;
+            }
+            looper.runOneTask();
+            messages++;
+        }
+        looper.idleFor(Duration.ofMillis(end - SystemClock.uptimeMillis()));
+        return messages;
+    }
+}